@@ -0,0 +1,105 @@
+#!/usr/bin/env bash
+set -euo pipefail
+
+# Usage: ./benchmark-scaling.sh [scale...]
+# Example: ./benchmark-scaling.sh 1 10 100
+#
+# Runs generate-corpus -> find -> manifest-enrich -> bake-image --direct-dump on synthetic docs trees
+# of increasing size, fully offline (no Docker, no registry), and reports per stage wall time,
+# peak RSS, throughput and output size.
+#
+# Environment:
+#   BASE_GUIDES  guides at scale 1 (default: 300, about the size of the Quarkus docs)
+#   OUT_DIR      where corpora, outputs and the report go (default: /tmp/chappie-scaling)
+#   BAKE_ARGS    extra bake-image arguments, e.g. "--semantic"
+#   TIME_BIN     GNU time binary (default: /usr/bin/time)
+
+SCALES=("$@")
+[[ ${#SCALES[@]} -gt 0 ]] || SCALES=(1 10 100)
+
+BASE_GUIDES="${BASE_GUIDES:-300}"
+OUT_DIR="${OUT_DIR:-/tmp/chappie-scaling}"
+BAKE_ARGS="${BAKE_ARGS:-}"
+
+# Pick the most recent JAR downloaded to /tmp
+JAR="$(ls -t /tmp/chappie-quarkus-rag-*.jar 2>/dev/null | head -1 || true)"
+[[ -n "$JAR" && -f "$JAR" ]] || { echo "Error: chappie-quarkus-rag JAR not found in /tmp"; exit 2; }
+
+# GNU time reports peak RSS (%M, KB); the shell builtin does not
+TIME="${TIME_BIN:-/usr/bin/time}"
+"$TIME" -f "%M" true >/dev/null 2>&1 || { echo "Error: GNU time not found at $TIME (install the 'time' package)"; exit 3; }
+
+mkdir -p "$OUT_DIR"
+RESULTS="$OUT_DIR/results.csv"
+REPORT="$OUT_DIR/scaling-report.md"
+echo "scale,stage,guides,items,wall_s,peak_rss_mb,items_per_s,output_bytes" > "$RESULTS"
+
+echo "Using JAR:  $JAR"
+echo "Scales:     ${SCALES[*]} (x $BASE_GUIDES guides)"
+echo "Output:     $OUT_DIR"
+
+# run_stage <scale> <stage> <guides> <output-path> <log> -- command...
+run_stage() {
+  local scale="$1" stage="$2" guides="$3" output="$4" log="$5"
+  shift 6
+  echo "==> [x$scale] $stage"
+  local stats="$OUT_DIR/x$scale/$stage.time"
+  "$TIME" -f "%e %M" -o "$stats" "$@" > "$log" 2>&1 || { echo "Error: $stage failed, see $log"; exit 4; }
+
+  local wall rss_kb items bytes
+  read -r wall rss_kb < "$stats"
+  items="$guides"
+  if [[ "$stage" == "bake-image" ]]; then
+    # Segments are the unit of work for splitting and embedding
+    items="$(grep -o '\[ingest\] done: [0-9]* documents, [0-9]* segments' "$log" | awk '{print $5}' | tail -1)"
+    items="${items:-$guides}"
+  fi
+  bytes="$(du -sb "$output" | cut -f1)"
+  awk -v s="$scale" -v st="$stage" -v g="$guides" -v i="$items" -v w="$wall" -v r="$rss_kb" -v b="$bytes" \
+    'BEGIN { printf "%s,%s,%d,%d,%.3f,%.1f,%.1f,%d\n", s, st, g, i, w, r / 1024, (w > 0 ? i / w : 0), b }' >> "$RESULTS"
+}
+
+for SCALE in "${SCALES[@]}"; do
+  DIR="$OUT_DIR/x$SCALE"
+  REPO="$DIR/repo"
+  rm -rf "$DIR"
+  mkdir -p "$DIR"
+  GUIDES=$((BASE_GUIDES * SCALE))
+
+  run_stage "$SCALE" generate-corpus "$GUIDES" "$REPO" "$DIR/generate.log" -- \
+    java -jar "$JAR" generate-corpus --repo-root "$REPO" --guides "$BASE_GUIDES" --scale "$SCALE"
+
+  run_stage "$SCALE" find "$GUIDES" "$DIR/docs.json" "$DIR/find.log" -- \
+    java -jar "$JAR" find --repo-root "$REPO" --quarkus-version "bench-x$SCALE" --out "$DIR/docs.json"
+
+  run_stage "$SCALE" manifest-enrich "$GUIDES" "$DIR/docs.enriched.json" "$DIR/enrich.log" -- \
+    java -jar "$JAR" manifest-enrich --repo-root "$REPO" --in "$DIR/docs.json" --out "$DIR/docs.enriched.json"
+
+  # shellcheck disable=SC2086
+  run_stage "$SCALE" bake-image "$GUIDES" "$DIR/initdb" "$DIR/bake.log" -- \
+    java -jar "$JAR" bake-image --repo-root "$REPO" --in "$DIR/docs.enriched.json" --quarkus-version "bench-x$SCALE" \
+      --direct-dump --init-sql-dir "$DIR/initdb" $BAKE_ARGS
+done
+
+# Report. "vs first" is time per item relative to the smallest scale: ~1.0 is linear, clearly above is superlinear.
+awk -F, '
+  NR == 1 { next }
+  {
+    key = $2
+    if (!(key in base)) { base[key] = ($4 > 0 ? $5 / $4 : 0) }
+    ratio = (base[key] > 0 && $4 > 0) ? ($5 / $4) / base[key] : 0
+    flag = ratio > 1.5 ? " superlinear" : ""
+    rows = rows sprintf("| x%s | %s | %d | %d | %.2f | %.1f | %.1f | %.1f | %.2f%s |\n", $1, $2, $3, $4, $5, $6, $7, $8 / 1048576, ratio, flag)
+  }
+  END {
+    print "# Pipeline scaling\n"
+    print "Items are guides, or segments for bake-image. Output is the generated tree, manifest or init SQL.\n"
+    print "| Scale | Stage | Guides | Items | Wall (s) | Peak RSS (MB) | Items/s | Output (MB) | Time/item vs first |"
+    print "|---|---|---|---|---|---|---|---|---|"
+    printf "%s", rows
+  }' "$RESULTS" > "$REPORT"
+
+echo ""
+cat "$REPORT"
+echo ""
+echo "Raw results: $RESULTS"
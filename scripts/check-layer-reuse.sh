@@ -0,0 +1,59 @@
+#!/usr/bin/env bash
+set -euo pipefail
+
+# Usage: ./check-layer-reuse.sh
+#
+# Bakes a small synthetic docs tree as two releases with --direct-dump, changing one guide in between,
+# and checks that exactly one rag_documents shard file differs (plus the per-image rag_image_info file).
+# Fully offline (no Docker, no registry).
+#
+# Environment:
+#   GUIDES   guides in the synthetic tree (default: 40)
+#   OUT_DIR  where the tree and both releases' init SQL go (default: /tmp/chappie-layer-reuse)
+
+GUIDES="${GUIDES:-40}"
+OUT_DIR="${OUT_DIR:-/tmp/chappie-layer-reuse}"
+
+# Pick the most recent JAR downloaded to /tmp
+JAR="$(ls -t /tmp/chappie-quarkus-rag-*.jar 2>/dev/null | head -1 || true)"
+[[ -n "$JAR" && -f "$JAR" ]] || { echo "Error: chappie-quarkus-rag JAR not found in /tmp"; exit 2; }
+
+REPO="$OUT_DIR/repo"
+rm -rf "$OUT_DIR"
+mkdir -p "$OUT_DIR"
+
+bake() {
+  local v="$1"
+  echo "==> Baking release $v"
+  java -jar "$JAR" find --repo-root "$REPO" --quarkus-version "$v" --out "$OUT_DIR/$v-docs.json" > "$OUT_DIR/$v.log" 2>&1
+  java -jar "$JAR" manifest-enrich --repo-root "$REPO" --in "$OUT_DIR/$v-docs.json" --out "$OUT_DIR/$v-docs.enriched.json" >> "$OUT_DIR/$v.log" 2>&1
+  java -jar "$JAR" bake-image --repo-root "$REPO" --in "$OUT_DIR/$v-docs.enriched.json" --quarkus-version "$v" \
+    --direct-dump --init-sql-dir "$OUT_DIR/$v" >> "$OUT_DIR/$v.log" 2>&1 || { echo "Error: bake failed, see $OUT_DIR/$v.log"; exit 4; }
+}
+
+java -jar "$JAR" generate-corpus --repo-root "$REPO" --guides "$GUIDES" > "$OUT_DIR/generate.log" 2>&1
+bake 1.0.0
+
+GUIDE="$(ls "$REPO"/docs/src/main/asciidoc/guide-*.adoc | head -1)"
+echo "==> Changing $(basename "$GUIDE")"
+printf '\n== Changed in this release\n\nOne more paragraph.\n' >> "$GUIDE"
+bake 1.0.1
+
+echo ""
+changed_shards=0
+for f in "$OUT_DIR"/1.0.0/*.sql.gz; do
+  name="$(basename "$f")"
+  if cmp -s "$f" "$OUT_DIR/1.0.1/$name"; then
+    echo "  same     $name"
+  else
+    echo "  CHANGED  $name"
+    [[ "$name" == 10-rag-documents-* ]] && changed_shards=$((changed_shards + 1))
+  fi
+done
+echo ""
+
+if [[ "$changed_shards" -ne 1 ]]; then
+  echo "FAIL: $changed_shards rag_documents shard layers changed, expected 1"
+  exit 1
+fi
+echo "OK: one changed guide rewrote exactly one rag_documents shard layer"
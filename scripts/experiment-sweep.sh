@@ -0,0 +1,60 @@
+#!/usr/bin/env bash
+set -euo pipefail
+
+# Usage: ./experiment-sweep.sh <quarkus-version> <name:chunk-size:chunk-overlap[:semantic]>...
+# Example: ./experiment-sweep.sh 3.30.6 overlap-30pct:1000:300 smaller-chunks:800:200 semantic:1000:200:semantic
+#
+# Bakes all variants in one run: docs are read once, the model is loaded once, and chunks that
+# come out identical in several variants are embedded once.
+
+[[ $# -ge 2 ]] || {
+  echo "Usage: $0 <quarkus-version> <name:chunk-size:chunk-overlap[:semantic]>..."
+  echo ""
+  echo "Example:"
+  echo "  $0 3.30.6 overlap-30pct:1000:300 smaller-chunks:800:200 larger-chunks:1200:200"
+  exit 1
+}
+
+V="$1"
+shift
+
+# Pick the most recent JAR downloaded to /tmp
+JAR="$(ls -t /tmp/chappie-quarkus-rag-*.jar 2>/dev/null | head -1 || true)"
+[[ -n "$JAR" && -f "$JAR" ]] || { echo "Error: chappie-quarkus-rag JAR not found in /tmp"; exit 2; }
+
+REPO="/tmp/quarkus-$V"
+[[ -d "$REPO" ]] || { echo "Error: $REPO does not exist. Run download.sh and unzip.sh first."; exit 3; }
+
+OUT1="/tmp/quarkus-$V-docs.json"
+OUT2="/tmp/quarkus-$V-docs.enriched.json"
+
+if [[ ! -f "$OUT1" ]] || [[ ! -f "$OUT2" ]]; then
+  echo "==> Manifest files not found, creating them..."
+  java -jar "$JAR" find --repo-root "$REPO" --quarkus-version "$V" --out "$OUT1"
+  java -jar "$JAR" manifest-enrich --repo-root "$REPO" --in "$OUT1" --out "$OUT2"
+fi
+
+VARIANT_ARGS=()
+for spec in "$@"; do
+  VARIANT_ARGS+=(--variant "$spec")
+done
+
+java -jar "$JAR" bake-image \
+  --repo-root "$REPO" \
+  --in "$OUT2" \
+  --quarkus-version "$V" \
+  "${VARIANT_ARGS[@]}"
+
+echo ""
+echo "========================================"
+echo "SWEEP COMPLETE"
+echo "========================================"
+for spec in "$@"; do
+  NAME="${spec%%:*}"
+  docker tag "ghcr.io/quarkusio/chappie-ingestion-quarkus:$V-$NAME" "ghcr.io/quarkusio/chappie-ingestion-quarkus:test-$NAME"
+  echo "Image created: ghcr.io/quarkusio/chappie-ingestion-quarkus:test-$NAME"
+done
+echo ""
+echo "Test each one in chappie-server:"
+echo "   ./mvnw test -Dtest=RagComparisonTest -Drag.image=ghcr.io/quarkusio/chappie-ingestion-quarkus:test-<name>"
+echo "========================================"
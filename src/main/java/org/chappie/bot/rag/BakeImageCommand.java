@@ -3,15 +3,27 @@ package org.chappie.bot.rag;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -20,6 +32,9 @@ import javax.sql.DataSource;
 import org.eclipse.microprofile.config.Config;
 import org.eclipse.microprofile.config.ConfigProvider;
 import org.jboss.logging.Logger;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
 import org.postgresql.ds.PGSimpleDataSource;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.utility.DockerImageName;
@@ -31,16 +46,14 @@ import com.google.cloud.tools.jib.api.DockerDaemonImage;
 import com.google.cloud.tools.jib.api.Jib;
 import com.google.cloud.tools.jib.api.JibContainerBuilder;
 import com.google.cloud.tools.jib.api.RegistryImage;
-import com.google.cloud.tools.jib.api.buildplan.AbsoluteUnixPath;
 import com.google.cloud.tools.jib.api.buildplan.FileEntriesLayer;
 import com.google.cloud.tools.jib.api.buildplan.Platform;
 import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.data.document.Metadata;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
 import dev.langchain4j.store.embedding.pgvector.PgVectorEmbeddingStore;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -49,7 +62,7 @@ import picocli.CommandLine.Option;
 @Command(
     name = "bake-image",
     mixinStandardHelpOptions = true,
-    description = "Auto-start pgvector, optionally ingest a manifest, dump DB, and bake a Docker image with the dump."
+    description = "Ingest a manifest, dump it as init SQL (via an auto-started pgvector, or directly with --direct-dump), and bake a Docker image with the dump."
 )
 public class BakeImageCommand implements Runnable {
 
@@ -74,6 +87,70 @@ public class BakeImageCommand implements Runnable {
     @Option(names = "--semantic", description = "Use semantic chunking (split by AsciiDoc headers) instead of fixed-size chunks.")
     boolean semanticChunking;
 
+    @Option(names = "--resolve-includes",
+            description = "Resolve include:: directives. Each shared fragment is read, split and embedded once and its chunks are stored for every including guide.")
+    boolean resolveIncludes;
+
+    @Option(names = "--variant",
+            description = "Splitter configuration to bake as name:chunk-size:chunk-overlap[:semantic] (repeatable, e.g. overlap-30pct:1000:300). "
+                    + "Each variant gets its own image tagged <quarkus-version>-<name> (or subdirectory of --init-sql-dir); guides are read once and "
+                    + "identical chunks are embedded once across variants. Replaces --chunk-size, --chunk-overlap and --semantic.")
+    List<String> variantSpecs = new ArrayList<>();
+
+    // --- Dimensionality reduction ---
+    @Option(names = "--pca-dims", defaultValue = "0",
+            description = "Fit a PCA projection on the corpus embeddings and store vectors reduced to this many dimensions (0 = keep full dimension, default: ${DEFAULT-VALUE}).")
+    int pcaDims;
+
+    @Option(names = "--pca-eval-dims", split = ",",
+            description = "Before storing, report recall@k and scan latency of PCA-reduced vectors at each of these dimensions (e.g. 128,192,256).")
+    List<Integer> pcaEvalDims = new ArrayList<>();
+
+    @Option(names = "--pca-eval-queries", defaultValue = "200",
+            description = "Without --queries, number of corpus segments held out of the PCA fit and used as queries for --pca-eval-dims (default: ${DEFAULT-VALUE}).")
+    int pcaEvalQueries;
+
+    @Option(names = "--pca-eval-k", defaultValue = "10",
+            description = "k used for recall@k in --pca-eval-dims (default: ${DEFAULT-VALUE}).")
+    int pcaEvalK;
+
+    @Option(names = "--index-params",
+            description = "Vector index parameters as written by index-tune (JSON). Default: IVFFlat with 100 lists.")
+    Path indexParamsFile;
+
+    // --- Query embedding cache ---
+    @Option(names = "--queries",
+            description = "Known questions, one per line ('#' starts a comment), to embed and bake into the query_embedding_cache table.")
+    Path queriesFile;
+
+    @Option(names = "--cache-top-k", defaultValue = "0",
+            description = "Also store the ids of the exact top-k chunks for each cached question (0 = embeddings only, default: ${DEFAULT-VALUE}).")
+    int cacheTopK;
+
+    // --- Lexical index ---
+    @Option(names = "--lexical-index",
+            description = "Also bake the rag_lexical table: identifier-aware terms of each chunk and its section path as a tsvector with a GIN index, for hybrid lexical + vector retrieval.")
+    boolean lexicalIndex;
+
+    // --- Container-free dump ---
+    @Option(names = "--direct-dump",
+            description = "Write the init SQL directly from the embeddings instead of loading a Testcontainers database and running pg_dump. Needs no Docker for this step.")
+    boolean directDump;
+
+    @Option(names = "--init-sql-dir",
+            description = "Write the init SQL files into this directory and skip building the image.")
+    Path initSqlDir;
+
+    @Option(names = "--verify-jdbc-url",
+            description = "With --direct-dump: load the written files into this pgvector database, check the rows and a store search, and drop the loaded tables again (e.g. jdbc:postgresql://localhost:5432/postgres).")
+    String verifyJdbcUrl;
+
+    @Option(names = "--verify-username", defaultValue = "postgres", description = "Username for --verify-jdbc-url (default: ${DEFAULT-VALUE}).")
+    String verifyUsername;
+
+    @Option(names = "--verify-password", defaultValue = "postgres", description = "Password for --verify-jdbc-url (default: ${DEFAULT-VALUE}).")
+    String verifyPassword;
+
     // --- Image output ---
     @Option(names = "--push", description = "Push to remote registry instead of loading to local Docker daemon.")
     boolean push;
@@ -87,12 +164,18 @@ public class BakeImageCommand implements Runnable {
     @Option(names = "--latest", description = "Tag this as the latest image")
     boolean latest;
     
+    @Option(names = "--data-shards", defaultValue = "16",
+            description = "Number of docs shards; each shard's rows go into their own image layer so unchanged docs reuse layers (default: ${DEFAULT-VALUE}).")
+    int dataShards;
+
     @Option(names = "--base-image", defaultValue = "pgvector/pgvector:pg16", description = "Base image for final image (default: ${DEFAULT-VALUE}).")
     String baseImageRef;
 
     private final ObjectMapper mapper = new ObjectMapper();
     private PostgreSQLContainer<?> container;
     private static final String DB_NAME = "postgres";
+    private static final int STORE_BATCH_SIZE = 500;
+    private static final String SHARD_TABLE = "rag_bake_shards";
     
     @Override
     public void run() {
@@ -101,59 +184,64 @@ public class BakeImageCommand implements Runnable {
 
         Path workDir = null;
         try {
-            // 1) Start DB
-            LOG.info("=== Starting pgvector with Testcontainers ===");
-            this.container = new PostgreSQLContainer<>(DockerImageName.parse(this.baseImageRef))
-                    .withDatabaseName(DB_NAME)
-                    .withUsername("postgres")
-                    .withPassword("postgres");
-            this.container.start();
-            String jdbcUrl = this.container.getJdbcUrl();
-            String user = this.container.getUsername();
-            String pass = this.container.getPassword();
-            LOG.infof("[bake-image] Started: %s id=%s jdbc=%s",
-                    this.baseImageRef, this.container.getContainerId(), jdbcUrl);
-            
+            require(Files.isDirectory(this.repoRoot), "--repo-root must be provided and point to the docs repo root");
+            require(dataShards > 0, "--data-shards must be positive");
+            require(verifyJdbcUrl == null || directDump, "--verify-jdbc-url requires --direct-dump");
+            IndexParams indexParams = indexParamsFile != null ? IndexParams.read(indexParamsFile) : IndexParams.defaults();
+
+            // 1) Start DB (not needed when the dump is written directly)
+            if (!directDump) {
+                LOG.info("=== Starting pgvector with Testcontainers ===");
+                this.container = new PostgreSQLContainer<>(DockerImageName.parse(this.baseImageRef))
+                        .withDatabaseName(DB_NAME)
+                        .withUsername("postgres")
+                        .withPassword("postgres");
+                this.container.start();
+                LOG.infof("[bake-image] Started: %s id=%s jdbc=%s",
+                        this.baseImageRef, this.container.getContainerId(), this.container.getJdbcUrl());
+            }
 
             // 2) Ingestion
-            LOG.info("=== Ingesting documents into pgvector ===");
-            require(Files.isDirectory(this.repoRoot), "--repo-root must be provided and point to the docs repo root");
+            LOG.info("=== Ingesting documents ===");
 
             int embeddingDimensions = getDim();
-            LOG.infof("[ingest] manifest=%s, repoRoot=%s, dims=%d, chunk=%d/%d",
-                    ingestManifest, repoRoot, embeddingDimensions, chunkSize, chunkOverlap);
-
-            DataSource ds = makeDataSource(jdbcUrl, user, pass);
-
-            PgVectorEmbeddingStore store = PgVectorEmbeddingStore.datasourceBuilder()
-                    .datasource(ds)
-                    .table("rag_documents")
-                    .dimension(embeddingDimensions)
-                    .useIndex(true)
-                    .indexListSize(100)
-                    .build();
+            require(pcaDims >= 0 && pcaDims < embeddingDimensions,
+                    "--pca-dims must be between 0 and " + (embeddingDimensions - 1));
 
-            EmbeddingModel embeddingModel = new BgeSmallEnV15QuantizedEmbeddingModel();
-
-            DocumentSplitter splitter;
-            if (semanticChunking) {
-                LOG.infof("[ingest] Using semantic chunking (AsciiDoc headers), max chunk=%d", chunkSize);
-                splitter = new AsciiDocSemanticSplitter(chunkSize, chunkOverlap);
+            List<BakeVariant> variants = new ArrayList<>();
+            if (variantSpecs.isEmpty()) {
+                variants.add(new BakeVariant(null, chunkSize, chunkOverlap, semanticChunking));
             } else {
-                LOG.infof("[ingest] Using recursive chunking, size=%d, overlap=%d", chunkSize, chunkOverlap);
-                splitter = DocumentSplitters.recursive(chunkSize, chunkOverlap);
+                require(!latest, "--latest cannot be combined with --variant");
+                for (String spec : variantSpecs) variants.add(BakeVariant.parse(spec));
+                require(variants.stream().map(v -> v.name).distinct().count() == variants.size(), "Variant names must be unique");
+            }
+            LOG.infof("[ingest] manifest=%s, repoRoot=%s, dims=%d", ingestManifest, repoRoot, embeddingDimensions);
+            for (BakeVariant variant : variants) {
+                LOG.infof("[ingest] Using %s", variant.describe());
             }
 
-            EmbeddingStoreIngestor ingestor = EmbeddingStoreIngestor.builder()
-                    .embeddingModel(embeddingModel)
-                    .embeddingStore(store)
-                    .documentSplitter(splitter)
-                    .build();
+            EmbeddingModel embeddingModel = new BgeSmallEnV15QuantizedEmbeddingModel();
 
             List<Map<String, Object>> manifest = readManifestArray(ingestManifest);
             int total = manifest.size();
             int processed = 0;
 
+            // Rows are spooled to disk per variant and docs shard; vectors are only also kept in
+            // memory when a PCA projection has to be fitted on the whole corpus before storing.
+            // Within a guide embeddings are keyed by chunk text, so a chunk that several variants
+            // produce identically is embedded once; included fragments are embedded once per run.
+            boolean keepVectors = pcaDims > 0 || !pcaEvalDims.isEmpty();
+            workDir = Files.createTempDirectory("rag-bake-" + System.nanoTime());
+            for (BakeVariant variant : variants) {
+                variant.rows = new SegmentSpool(variantDir(workDir, variant).resolve("rows"), dataShards);
+                variant.embeddings = keepVectors ? new ArrayList<>() : null;
+            }
+            IncludeResolver includes = resolveIncludes ? new IncludeResolver(repoRoot) : null;
+            Map<String, Embedding> fragmentEmbeddings = new HashMap<>();
+            long segmentCount = 0;
+            long embeddedCount = 0;
+
             for (Map<String, Object> item : manifest) {
                 String rel = asText(item.get("repo_path"));
                 if (rel == null) continue;
@@ -169,7 +257,6 @@ public class BakeImageCommand implements Runnable {
                 putIfPresent(meta, "title", asText(item.get("title")));
                 putIfPresent(meta, "repo_path", rel);
                 putIfPresent(meta, "docs_rel_path", asText(item.get("docs_rel_path")));
-                putIfPresent(meta, "quarkus_version", asText(item.get("quarkus_version")));
                 putIfPresent(meta, "categories", asText(item.get("categories")));
                 putIfPresent(meta, "summary", asText(item.get("summary")));
                 putIfPresent(meta, "topics", asText(item.get("topics")));
@@ -189,76 +276,101 @@ public class BakeImageCommand implements Runnable {
                     }
                 }
                 
-                Document doc = Document.from(text, new Metadata(meta));
-                ingestor.ingest(doc);
+                List<IncludeResolver.Fragment> fragments = List.of();
+                if (includes != null) {
+                    IncludeResolver.Resolved resolved = includes.resolve(adoc, text);
+                    text = resolved.body();
+                    fragments = resolved.fragments();
+                }
+
+                List<List<TextSegment>> guideSegments = new ArrayList<>();
+                Set<String> pending = new LinkedHashSet<>();
+                Set<String> fragmentTexts = new HashSet<>();
+                for (BakeVariant variant : variants) {
+                    List<TextSegment> segments = new ArrayList<>(
+                            variant.splitter.split(Document.from(text, new Metadata(meta))));
+
+                    // Included fragments: split on first use, then reused by reference
+                    for (IncludeResolver.Fragment fragment : fragments) {
+                        List<TextSegment> shared = variant.fragmentSegments.get(fragment.key());
+                        if (shared == null) {
+                            shared = variant.splitter.split(Document.from(fragment.body()));
+                            variant.fragmentSegments.put(fragment.key(), shared);
+                        } else {
+                            variant.reusedFragmentSegments += shared.size();
+                        }
+                        for (TextSegment segment : shared) {
+                            Map<String, Object> fragmentMeta = new LinkedHashMap<>(meta);
+                            fragmentMeta.putAll(segment.metadata().toMap());
+                            fragmentMeta.put("include_path", fragment.repoPath());
+                            segments.add(TextSegment.from(segment.text(), new Metadata(fragmentMeta)));
+                            fragmentTexts.add(segment.text());
+                        }
+                    }
+
+                    for (TextSegment segment : segments) {
+                        if (!fragmentEmbeddings.containsKey(segment.text())) pending.add(segment.text());
+                    }
+                    guideSegments.add(segments);
+                }
+
+                Map<String, Embedding> embeddingsByText = new HashMap<>();
+                if (!pending.isEmpty()) {
+                    List<String> texts = new ArrayList<>(pending);
+                    List<Embedding> embedded = embeddingModel.embedAll(texts.stream().map(TextSegment::from).toList()).content();
+                    for (int i = 0; i < texts.size(); i++) {
+                        embeddingsByText.put(texts.get(i), embedded.get(i));
+                        if (fragmentTexts.contains(texts.get(i))) fragmentEmbeddings.put(texts.get(i), embedded.get(i));
+                    }
+                    embeddedCount += texts.size();
+                }
+                for (int v = 0; v < variants.size(); v++) {
+                    BakeVariant variant = variants.get(v);
+                    int segmentIndex = 0;
+                    for (TextSegment segment : guideSegments.get(v)) {
+                        Embedding embedding = embeddingsByText.get(segment.text());
+                        if (embedding == null) embedding = fragmentEmbeddings.get(segment.text());
+                        variant.rows.add(rel, InitDbLayers.segmentId(rel, segmentIndex++), embedding, segment);
+                        if (variant.embeddings != null) variant.embeddings.add(embedding);
+                    }
+                    segmentCount += segmentIndex;
+                }
 
                 processed++;
                 if (processed % 25 == 0) {
                     LOG.infof("[ingest] %d / %d ...", processed, total);
                 }
             }
-            LOG.infof("[ingest] done: %d documents", processed);
-            
-
-            // 3) Dump database to SQL
-            LOG.info("=== Dumping database ===");
-            workDir = Files.createTempDirectory("rag-bake-" + System.nanoTime());
-            Path initDir = Files.createDirectories(workDir.resolve("init"));
-            Path dump = initDir.resolve("01-rag.sql");
-
-            
-            // dump *inside* container to /tmp/rag.sql then copy to host
-            String inside = "/tmp/rag.sql";
-            var result = this.container.execInContainer(
-                    "bash", "-lc",
-                    "PGPASSWORD=" + this.container.getPassword() +
-                            " pg_dump -U " + this.container.getUsername() +
-                            " -d " + DB_NAME +
-                            " --no-owner --no-privileges --format=plain -f " + inside
-            );
-            if (result.getExitCode() != 0) {
-                throw new IllegalStateException("pg_dump failed: " + result.getStderr());
+            for (BakeVariant variant : variants) {
+                variant.rows.close();
+                LOG.infof("%s embedded %d documents into %d segments", variant.tag("ingest"), processed, variant.rows.size());
+                if (includes != null) {
+                    LOG.infof("%s %d distinct fragments split once, %d fragment segments reused",
+                            variant.tag("ingest"), variant.fragmentSegments.size(), variant.reusedFragmentSegments);
+                }
             }
-            this.container.copyFileFromContainer(inside, dump.toString());
-            
-            LOG.infof("[bake-image] Dumped SQL -> %s", dump);
-
-            // 4) Build and push the image with Jib
-            LOG.info("=== Building image ===");
-            FileEntriesLayer initLayer = FileEntriesLayer.builder()
-                    .setName("initdb-sql")
-                    .addEntryRecursive(initDir, AbsoluteUnixPath.get("/docker-entrypoint-initdb.d"))
-                    .build();
-
-            JibContainerBuilder jib = Jib.from(baseImageRef).addFileEntriesLayer(initLayer);
-
-            String targetImageRef = "ghcr.io/quarkusio/chappie-ingestion-quarkus:" + quarkusversion;
-            LOG.infof("[bake-image] creating image [%s]", targetImageRef);
-            Containerizer containerizer;
-            if (push) {
-                // Multi-platform
-                jib.setPlatforms(Set.of(new Platform("amd64", "linux"), new Platform("arm64", "linux")));
-
-                RegistryImage registry = RegistryImage.named(targetImageRef);
-                if (registryUsername != null && registryPassword != null) {
-                    registry.addCredential(registryUsername, registryPassword);
+            if (includes != null) {
+                LOG.infof("[ingest] includes: %s", includes.stats());
+            }
+            LOG.infof("[ingest] %d chunks embedded for %d segments across %d variant(s)",
+                    embeddedCount, segmentCount, variants.size());
+            fragmentEmbeddings.clear();
+
+            List<float[]> queryVectors = null;
+            List<String> queries = queriesFile != null ? QueryEmbeddingCache.readQueries(queriesFile) : List.of();
+            if (queriesFile != null && queries.isEmpty()) {
+                LOG.warnf("[query-cache] No queries in %s", queriesFile);
+            } else if (!queries.isEmpty()) {
+                queryVectors = new ArrayList<>();
+                for (Embedding e : embeddingModel.embedAll(queries.stream().map(TextSegment::from).toList()).content()) {
+                    queryVectors.add(e.vector());
                 }
-                containerizer = Containerizer.to(registry);
-            } else {
-                containerizer = Containerizer.to(DockerDaemonImage.named(targetImageRef));
             }
 
-            if (latest) {
-                LOG.info("[bake-image] also tagging :latest");
-                containerizer.withAdditionalTag("latest");
+            for (BakeVariant variant : variants) {
+                bakeVariant(variant, manifest, processed, embeddingDimensions, indexParams, queries, queryVectors,
+                        variantDir(workDir, variant));
             }
-            
-            containerizer
-                .setToolName("bake-image")
-                .setAllowInsecureRegistries(false);
-
-            jib.containerize(containerizer);
-            LOG.infof("[bake-image] Image ready: %s", targetImageRef);
 
         } catch (Exception e) {
             LOG.error("bake-image failed", e);
@@ -280,6 +392,341 @@ public class BakeImageCommand implements Runnable {
         }
     }
 
+    private static Path variantDir(Path workDir, BakeVariant variant) throws IOException {
+        return Files.createDirectories(workDir.resolve(variant.name != null ? variant.name : "default"));
+    }
+
+    /**
+     * PCA, auxiliary tables, init SQL and image (or --init-sql-dir output) for one variant.
+     */
+    private void bakeVariant(BakeVariant variant, List<Map<String, Object>> manifest, int processed, int embeddingDimensions,
+            IndexParams indexParams, List<String> queries, List<float[]> queryVectors, Path workDir) throws Exception {
+        SegmentSpool rows = variant.rows;
+
+        int storedDimensions = embeddingDimensions;
+        PcaProjection projection = null;
+        if (variant.embeddings != null) {
+            PcaProjection basis = PcaProjection.fit(variant.embeddings);
+            if (!pcaEvalDims.isEmpty()) {
+                evaluateDimensions(variant.embeddings, basis, queryVectors);
+            }
+            if (pcaDims > 0) {
+                projection = basis.truncate(pcaDims);
+                storedDimensions = pcaDims;
+                LOG.infof("%s PCA %d -> %d dims keeps %.1f%% of variance", variant.tag("ingest"),
+                        embeddingDimensions, pcaDims, projection.explainedVariance() * 100);
+                rows.project(projection);
+            }
+            variant.embeddings = null;
+        }
+
+        // Per-release values live here rather than in the rows, so unchanged guides keep identical shard layers
+        List<BakedTable> auxTables = new ArrayList<>();
+        auxTables.add(new ImageInfo()
+                .put("quarkus_version", quarkusversion)
+                .put("variant", variant.name));
+        if (projection != null) {
+            auxTables.add(projection);
+        }
+        if (queryVectors != null) {
+            auxTables.add(bakeQueryCache(variant, queries, queryVectors, projection, storedDimensions));
+        }
+        if (lexicalIndex) {
+            auxTables.add(new LexicalIndex(rows));
+        }
+        LOG.infof("%s done: %d documents, %d segments, %d dims", variant.tag("ingest"), processed, rows.size(), storedDimensions);
+
+        // 3) Layered, compressed init SQL
+        Path initDir = Files.createDirectories(workDir.resolve("init"));
+        InitDbLayers initDb = new InitDbLayers(initDir);
+
+        if (directDump) {
+            LOG.info("=== Writing init SQL ===");
+            DirectDump dump = new DirectDump(storedDimensions, rows);
+            dump.write(initDb, auxTables, indexParams);
+            if (verifyJdbcUrl != null) {
+                dump.verify(makeDataSource(verifyJdbcUrl, verifyUsername, verifyPassword), initDb, auxTables, indexParams);
+            }
+        } else {
+            DataSource ds = makeDataSource(container.getJdbcUrl(), container.getUsername(), container.getPassword());
+
+            // Creates rag_documents the way the serving side expects it; the rows are then streamed in with COPY
+            PgVectorEmbeddingStore.datasourceBuilder()
+                    .datasource(ds)
+                    .table("rag_documents")
+                    .dimension(storedDimensions)
+                    .useIndex(false)
+                    .build();
+            try (Connection c = ds.getConnection()) {
+                CopyIn copyIn = c.unwrap(PGConnection.class).getCopyAPI()
+                        .copyIn("COPY rag_documents (embedding_id, embedding, text, metadata) FROM STDIN");
+                try {
+                    rows.forEach(row -> {
+                        byte[] line = row.line().getBytes(StandardCharsets.UTF_8);
+                        try {
+                            copyIn.writeToCopy(line, 0, line.length);
+                        } catch (SQLException e) {
+                            throw new IOException(e);
+                        }
+                    });
+                    copyIn.endCopy();
+                } finally {
+                    if (copyIn.isActive()) copyIn.cancelCopy();
+                }
+            }
+            // Built after loading: cheaper than maintaining it per insert, and IVFFlat
+            // needs the data present to pick good list centroids.
+            try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+                st.execute(indexParams.createIndexSql("rag_documents"));
+            }
+            LOG.infof("%s Created index: %s", variant.tag("ingest"), indexParams.describe());
+            for (BakedTable aux : auxTables) {
+                aux.store(ds);
+            }
+
+            LOG.info("=== Dumping database ===");
+            pgDumpSection(initDb, "pre-data", "00-schema.sql.gz", workDir, "");
+            dumpDocumentShards(ds, initDb, manifest);
+            for (BakedTable aux : auxTables) {
+                initDb.writeTable(aux);
+            }
+            pgDumpSection(initDb, "post-data", "90-indexes.sql.gz", workDir, indexParams.databaseSettingsSql());
+
+            // The next variant starts from an empty database
+            try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+                st.execute("DROP TABLE rag_documents");
+                for (BakedTable aux : auxTables) st.execute("DROP TABLE " + aux.name());
+            }
+        }
+
+        LOG.infof("%s Dumped SQL -> %s (%d files, %d bytes compressed)",
+                variant.tag("bake-image"), initDir, initDb.layers().size(), initDb.totalBytes());
+
+        if (initSqlDir != null) {
+            Path target = Files.createDirectories(variant.name != null ? initSqlDir.resolve(variant.name) : initSqlDir);
+            for (Path file : initDb.files()) {
+                Files.copy(file, target.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+            LOG.infof("%s Wrote init SQL to %s, skipping image build", variant.tag("bake-image"), target);
+            return;
+        }
+
+        // 4) Build and push the image with Jib
+        LOG.info("=== Building image ===");
+        JibContainerBuilder jib = Jib.from(baseImageRef);
+        for (FileEntriesLayer layer : initDb.layers()) {
+            jib.addFileEntriesLayer(layer);
+        }
+
+        String targetImageRef = "ghcr.io/quarkusio/chappie-ingestion-quarkus:" + quarkusversion
+                + (variant.name != null ? "-" + variant.name : "");
+        LOG.infof("[bake-image] creating image [%s]", targetImageRef);
+        Containerizer containerizer;
+        if (push) {
+            // Multi-platform
+            jib.setPlatforms(Set.of(new Platform("amd64", "linux"), new Platform("arm64", "linux")));
+
+            RegistryImage registry = RegistryImage.named(targetImageRef);
+            if (registryUsername != null && registryPassword != null) {
+                registry.addCredential(registryUsername, registryPassword);
+            }
+            containerizer = Containerizer.to(registry);
+        } else {
+            containerizer = Containerizer.to(DockerDaemonImage.named(targetImageRef));
+        }
+
+        if (latest) {
+            LOG.info("[bake-image] also tagging :latest");
+            containerizer.withAdditionalTag("latest");
+        }
+        
+        containerizer
+            .setToolName("bake-image")
+            .setAllowInsecureRegistries(false);
+
+        jib.containerize(containerizer);
+        LOG.infof("[bake-image] Image ready: %s", targetImageRef);
+    }
+
+    /**
+     * Bakes the known questions' embeddings (projected like the variant's vectors), so the serving side
+     * can skip inference for them; with --cache-top-k also their exact nearest chunks, found in one pass
+     * over the spooled rows.
+     */
+    private QueryEmbeddingCache bakeQueryCache(BakeVariant variant, List<String> queries, List<float[]> queryVectors,
+            PcaProjection projection, int dimension) throws IOException {
+        List<float[]> stored = new ArrayList<>();
+        for (float[] q : queryVectors) {
+            stored.add(projection != null ? projection.project(q) : q);
+        }
+
+        List<String[]> topIds = null;
+        if (cacheTopK > 0) {
+            List<float[]> normalized = stored.stream().map(FlatVectorIndex::normalize).toList();
+            List<FlatVectorIndex.TopK> tops = new ArrayList<>();
+            for (int i = 0; i < stored.size(); i++) tops.add(new FlatVectorIndex.TopK(cacheTopK));
+            variant.rows.forEach(row -> {
+                float[] v = FlatVectorIndex.normalize(row.vector());
+                for (int i = 0; i < normalized.size(); i++) {
+                    tops.get(i).offer(row.id(), FlatVectorIndex.dot(normalized.get(i), v));
+                }
+            });
+            topIds = tops.stream().map(FlatVectorIndex.TopK::ids).toList();
+        }
+        LOG.infof("%s Cached %d queries%s", variant.tag("query-cache"), queries.size(),
+                cacheTopK > 0 ? " with top-" + cacheTopK + " chunk ids" : "");
+        return new QueryEmbeddingCache(dimension, queries, stored, topIds);
+    }
+
+    /**
+     * Measures how well PCA-reduced vectors preserve the exact full-dimension top-k, and how long a
+     * brute-force scan takes at each dimension. The queries are the --queries questions when given.
+     * Otherwise they are corpus segments sampled with a fixed seed, left out of the PCA fit and excluded
+     * from their own results.
+     */
+    private void evaluateDimensions(List<Embedding> embeddings, PcaProjection basis, List<float[]> questions) {
+        FlatVectorIndex full = FlatVectorIndex.of(embeddings);
+        List<float[]> queries = new ArrayList<>();
+        int[] exclude;
+        String querySet;
+        if (questions != null && !questions.isEmpty()) {
+            queries.addAll(questions);
+            exclude = new int[queries.size()];
+            Arrays.fill(exclude, -1);
+            querySet = queries.size() + " --queries questions";
+        } else {
+            int heldOut = Math.min(pcaEvalQueries, full.size() / 2);
+            if (heldOut == 0) {
+                LOG.warnf("[pca-eval] skipped: %d segments are too few to hold out queries", full.size());
+                return;
+            }
+            exclude = new Random(42).ints(0, full.size()).distinct().limit(heldOut).toArray();
+            boolean[] held = new boolean[full.size()];
+            for (int row : exclude) {
+                held[row] = true;
+                queries.add(full.vector(row));
+            }
+            List<Embedding> fitted = new ArrayList<>(full.size() - heldOut);
+            for (int row = 0; row < full.size(); row++) {
+                if (!held[row]) fitted.add(embeddings.get(row));
+            }
+            basis = PcaProjection.fit(fitted);
+            querySet = heldOut + " corpus segments held out of the PCA fit";
+        }
+
+        int[][] truth = new int[queries.size()][];
+        long[] fullNanos = new long[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            long t = System.nanoTime();
+            truth[i] = full.topK(queries.get(i), pcaEvalK, exclude[i]);
+            fullNanos[i] = System.nanoTime() - t;
+        }
+        LOG.infof("[pca-eval] queries: %s", querySet);
+        LOG.infof("[pca-eval] dims=%d recall@%d=1.000 variance=100.0%% scan p50=%d us p99=%d us (exact baseline)",
+                full.dim(), pcaEvalK, LatencyStats.percentile(fullNanos, 50) / 1000, LatencyStats.percentile(fullNanos, 99) / 1000);
+
+        for (int dims : pcaEvalDims.stream().sorted().distinct().toList()) {
+            if (dims <= 0 || dims >= full.dim()) {
+                LOG.warnf("[pca-eval] skip dims=%d (must be between 1 and %d)", dims, full.dim() - 1);
+                continue;
+            }
+            PcaProjection p = basis.truncate(dims);
+            FlatVectorIndex reduced = FlatVectorIndex.of(p.projectAll(embeddings));
+            double recall = 0;
+            long[] nanos = new long[queries.size()];
+            for (int i = 0; i < queries.size(); i++) {
+                float[] q = p.project(queries.get(i));
+                long t = System.nanoTime();
+                int[] got = reduced.topK(q, pcaEvalK, exclude[i]);
+                nanos[i] = System.nanoTime() - t;
+                recall += FlatVectorIndex.recall(truth[i], got);
+            }
+            LOG.infof("[pca-eval] dims=%d recall@%d=%.3f variance=%.1f%% scan p50=%d us p99=%d us",
+                    dims, pcaEvalK, recall / queries.size(), p.explainedVariance() * 100,
+                    LatencyStats.percentile(nanos, 50) / 1000, LatencyStats.percentile(nanos, 99) / 1000);
+        }
+    }
+
+    /**
+     * Runs pg_dump for one section inside the container and writes it as an init file, followed by {@code trailer}.
+     */
+    private void pgDumpSection(InitDbLayers initDb, String section, String fileName, Path workDir, String trailer) throws Exception {
+        String inside = "/tmp/rag-" + section + ".sql";
+        var result = this.container.execInContainer(
+                "bash", "-lc",
+                "PGPASSWORD=" + this.container.getPassword() +
+                        " pg_dump -U " + this.container.getUsername() +
+                        " -d " + DB_NAME +
+                        " --no-owner --no-privileges --format=plain --section=" + section +
+                        " --exclude-table=" + SHARD_TABLE +
+                        " -f " + inside
+        );
+        if (result.getExitCode() != 0) {
+            throw new IllegalStateException("pg_dump failed: " + result.getStderr());
+        }
+        Path local = workDir.resolve("rag-" + section + ".sql");
+        this.container.copyFileFromContainer(inside, local.toString());
+        initDb.writeFiltered(fileName, local, trailer);
+    }
+
+    /**
+     * Writes one init file per docs shard with that shard's rag_documents rows, ordered by embedding_id.
+     * The guide-to-shard mapping lives in a scratch table that is excluded from the dump.
+     */
+    private void dumpDocumentShards(DataSource ds, InitDbLayers initDb, List<Map<String, Object>> manifest) throws Exception {
+        try (Connection c = ds.getConnection()) {
+            try (Statement st = c.createStatement()) {
+                st.execute("CREATE TABLE " + SHARD_TABLE + " (repo_path TEXT PRIMARY KEY, shard INTEGER NOT NULL)");
+            }
+            try (PreparedStatement ps = c.prepareStatement(
+                    "INSERT INTO " + SHARD_TABLE + " (repo_path, shard) VALUES (?, ?) ON CONFLICT DO NOTHING")) {
+                for (Map<String, Object> item : manifest) {
+                    String rel = asText(item.get("repo_path"));
+                    if (rel == null) continue;
+                    ps.setString(1, rel);
+                    ps.setInt(2, InitDbLayers.shardOf(rel, dataShards));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+
+            List<String> columns = copyColumns(c, "rag_documents");
+            String select = columns.stream().map(col -> "d." + col).collect(Collectors.joining(", "));
+            CopyManager copy = c.unwrap(PGConnection.class).getCopyAPI();
+            for (int shard = 0; shard < dataShards; shard++) {
+                try (Writer out = initDb.open(String.format("10-rag-documents-%02d.sql.gz", shard))) {
+                    out.write(InitDbLayers.header());
+                    out.write(InitDbLayers.copyHeader("rag_documents", columns));
+                    copy.copyOut("COPY (SELECT " + select + " FROM rag_documents d"
+                            + " JOIN " + SHARD_TABLE + " s ON s.repo_path = d.metadata->>'repo_path'"
+                            + " WHERE s.shard = " + shard
+                            + " ORDER BY d.embedding_id) TO STDOUT", out);
+                    out.write(InitDbLayers.copyTrailer());
+                }
+            }
+            try (Statement st = c.createStatement()) {
+                st.execute("DROP TABLE " + SHARD_TABLE);
+            }
+        }
+    }
+
+    /**
+     * Columns that can be loaded with COPY (generated columns are computed on load).
+     */
+    private static List<String> copyColumns(Connection c, String table) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT column_name FROM information_schema.columns"
+                        + " WHERE table_schema = 'public' AND table_name = ? AND is_generated = 'NEVER'"
+                        + " ORDER BY ordinal_position")) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) columns.add(rs.getString(1));
+            }
+        }
+        return columns;
+    }
+
     private static DataSource makeDataSource(String jdbc, String user, String pass) {
         PGSimpleDataSource ds = new PGSimpleDataSource();
         ds.setURL(jdbc);
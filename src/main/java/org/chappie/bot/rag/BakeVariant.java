@@ -0,0 +1,78 @@
+package org.chappie.bot.rag;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+
+/**
+ * One splitter configuration of a bake and the corpus it produces. A bake with several variants reads
+ * every guide once and splits it per variant; embeddings are looked up by chunk text, so chunks that
+ * come out identical in several variants are embedded once. The rows go to a {@link SegmentSpool} on disk.
+ */
+class BakeVariant {
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9][A-Za-z0-9_.-]{0,100}");
+
+    /** Null for the single bake configured by --chunk-size/--chunk-overlap/--semantic. */
+    final String name;
+    final int chunkSize;
+    final int chunkOverlap;
+    final boolean semantic;
+    final DocumentSplitter splitter;
+
+    SegmentSpool rows;
+    /** In-memory copy of the vectors, only kept when a PCA projection has to be fitted on them. */
+    List<Embedding> embeddings;
+    final Map<String, List<TextSegment>> fragmentSegments = new HashMap<>();
+    int reusedFragmentSegments;
+
+    BakeVariant(String name, int chunkSize, int chunkOverlap, boolean semantic) {
+        if (chunkSize <= 0 || chunkOverlap < 0 || chunkOverlap >= chunkSize) {
+            throw new IllegalArgumentException("Invalid chunk size/overlap " + chunkSize + "/" + chunkOverlap
+                    + (name != null ? " in variant " + name : ""));
+        }
+        this.name = name;
+        this.chunkSize = chunkSize;
+        this.chunkOverlap = chunkOverlap;
+        this.semantic = semantic;
+        this.splitter = semantic
+                ? new AsciiDocSemanticSplitter(chunkSize, chunkOverlap)
+                : DocumentSplitters.recursive(chunkSize, chunkOverlap);
+    }
+
+    /**
+     * Parses {@code name:chunk-size:chunk-overlap[:semantic]}, e.g. {@code overlap-30pct:1000:300}.
+     */
+    static BakeVariant parse(String spec) {
+        String[] parts = spec.trim().split(":");
+        if (parts.length < 3 || parts.length > 4 || (parts.length == 4 && !parts[3].equals("semantic"))) {
+            throw new IllegalArgumentException("Variant must be name:chunk-size:chunk-overlap[:semantic], got: " + spec);
+        }
+        if (!NAME.matcher(parts[0]).matches()) {
+            throw new IllegalArgumentException("Variant name must be usable as an image tag suffix: " + parts[0]);
+        }
+        try {
+            return new BakeVariant(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), parts.length == 4);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Variant chunk size and overlap must be numbers: " + spec);
+        }
+    }
+
+    String describe() {
+        return (name != null ? name + ": " : "") + (semantic ? "semantic" : "recursive")
+                + " chunking, size=" + chunkSize + ", overlap=" + chunkOverlap;
+    }
+
+    /**
+     * Log prefix, e.g. {@code [ingest:overlap-30pct]}.
+     */
+    String tag(String stage) {
+        return "[" + stage + (name != null ? ":" + name : "") + "]";
+    }
+}
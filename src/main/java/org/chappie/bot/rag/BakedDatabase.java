@@ -0,0 +1,65 @@
+package org.chappie.bot.rag;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+
+import org.jboss.logging.Logger;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+/**
+ * A baked database to read from: either a baked image started with Testcontainers, or an already
+ * running database given by JDBC URL. Closing stops the container, if one was started.
+ */
+class BakedDatabase implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(BakedDatabase.class);
+
+    private final PGSimpleDataSource ds = new PGSimpleDataSource();
+    private final PostgreSQLContainer<?> container;
+
+    private BakedDatabase(PostgreSQLContainer<?> container, String url, String user, String password) {
+        this.container = container;
+        ds.setURL(url);
+        ds.setUser(user);
+        ds.setPassword(password);
+    }
+
+    /**
+     * @param image   baked image to start, or null to use {@code jdbcUrl}
+     * @param jdbcUrl running database, used when {@code image} is null
+     */
+    static BakedDatabase open(String image, String jdbcUrl, String user, String password) {
+        if ((image == null) == (jdbcUrl == null)) {
+            throw new IllegalArgumentException("Exactly one of --image or --jdbc-url is required");
+        }
+        if (image == null) {
+            return new BakedDatabase(null, jdbcUrl, user, password);
+        }
+        LOG.infof("[baked-db] Starting %s with Testcontainers", image);
+        PostgreSQLContainer<?> container = new PostgreSQLContainer<>(DockerImageName.parse(image).asCompatibleSubstituteFor("postgres"))
+                .withDatabaseName("postgres")
+                .withUsername("postgres")
+                .withPassword("postgres")
+                .withStartupTimeout(Duration.ofMinutes(15));
+        container.start();
+        return new BakedDatabase(container, container.getJdbcUrl(), container.getUsername(), container.getPassword());
+    }
+
+    Connection connect() throws SQLException {
+        return ds.getConnection();
+    }
+
+    @Override
+    public void close() {
+        if (container != null) {
+            try {
+                container.stop();
+            } catch (Throwable t) {
+                LOG.warn("Failed to stop container", t);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.chappie.bot.rag;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The rows of a baked rag_documents table, loaded into memory: ids, vectors packed into a
+ * {@link FlatVectorIndex}, and optionally text and metadata. Also carries the PCA projection
+ * shipped in the image, if any, so queries can be embedded in the same space.
+ */
+class BakedStore {
+
+    static final String TABLE = "rag_documents";
+
+    final List<String> ids;
+    final FlatVectorIndex vectors;
+    final List<String> texts;
+    final List<String> metadata;
+    final PcaProjection projection;
+
+    private BakedStore(List<String> ids, FlatVectorIndex vectors, List<String> texts, List<String> metadata,
+            PcaProjection projection) {
+        this.ids = ids;
+        this.vectors = vectors;
+        this.texts = texts;
+        this.metadata = metadata;
+        this.projection = projection;
+    }
+
+    /**
+     * @param withContent also load text and metadata (JSON), otherwise those lists are empty
+     */
+    static BakedStore load(Connection c, boolean withContent) throws SQLException {
+        List<String> ids = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        List<String> metadata = new ArrayList<>();
+        float[] data = new float[0];
+        int dim = -1;
+        int size = 0;
+
+        boolean autoCommit = c.getAutoCommit();
+        c.setAutoCommit(false); // required for the driver to stream with a fetch size
+        try (Statement st = c.createStatement()) {
+            st.setFetchSize(1000);
+            String columns = withContent ? "embedding_id, embedding::text, text, metadata::text" : "embedding_id, embedding::text";
+            try (ResultSet rs = st.executeQuery("SELECT " + columns + " FROM " + TABLE + " ORDER BY embedding_id")) {
+                while (rs.next()) {
+                    float[] v = FlatVectorIndex.normalize(VectorText.parse(rs.getString(2)));
+                    if (dim < 0) {
+                        dim = v.length;
+                        data = new float[dim * 1024];
+                    } else if (v.length != dim) {
+                        throw new IllegalStateException("Mixed vector dimensions in " + TABLE + ": " + dim + " and " + v.length);
+                    }
+                    if ((size + 1) * dim > data.length) {
+                        data = Arrays.copyOf(data, data.length * 2);
+                    }
+                    System.arraycopy(v, 0, data, size * dim, dim);
+                    size++;
+
+                    ids.add(rs.getString(1));
+                    if (withContent) {
+                        texts.add(rs.getString(3));
+                        metadata.add(rs.getString(4));
+                    }
+                }
+            }
+            c.commit();
+        } finally {
+            c.setAutoCommit(autoCommit);
+        }
+        if (size == 0) {
+            throw new IllegalStateException("No rows in " + TABLE);
+        }
+
+        FlatVectorIndex index = new FlatVectorIndex(dim, size, Arrays.copyOf(data, dim * size));
+        return new BakedStore(ids, index, texts, metadata, PcaProjection.load(c));
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    /**
+     * Brings a model embedding into the stored space (PCA-projected if the image was baked with it).
+     */
+    float[] toStoredSpace(float[] modelEmbedding) {
+        return projection == null ? modelEmbedding : projection.project(modelEmbedding);
+    }
+}
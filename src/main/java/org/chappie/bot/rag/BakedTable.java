@@ -0,0 +1,68 @@
+package org.chappie.bot.rag;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+
+/**
+ * An auxiliary table computed in memory during the bake (PCA projection, query cache, ...).
+ * The same definition and rows are used whether the table is loaded into the bake database
+ * or written straight into the init SQL.
+ */
+interface BakedTable {
+
+    String name();
+
+    String createSql();
+
+    List<String> columns();
+
+    /**
+     * Writes all rows in COPY text format, in a stable order.
+     */
+    void writeRows(Writer out) throws IOException;
+
+    /**
+     * Secondary indexes, created after the rows are loaded.
+     */
+    default List<String> indexSql() {
+        return List.of();
+    }
+
+    /**
+     * Creates the table in the bake database, loads the rows and builds its indexes.
+     */
+    default void store(DataSource ds) throws SQLException, IOException {
+        // Rows go through a temporary file, so large tables are not held in memory
+        Path rows = Files.createTempFile("rag-" + name(), ".copy");
+        try {
+            try (Writer out = Files.newBufferedWriter(rows, StandardCharsets.UTF_8)) {
+                writeRows(out);
+            }
+            try (Connection c = ds.getConnection();
+                 Reader in = Files.newBufferedReader(rows, StandardCharsets.UTF_8)) {
+                try (Statement st = c.createStatement()) {
+                    st.execute(createSql());
+                }
+                c.unwrap(PGConnection.class).getCopyAPI().copyIn(
+                        "COPY " + name() + " (" + String.join(", ", columns()) + ") FROM STDIN", in);
+                try (Statement st = c.createStatement()) {
+                    for (String sql : indexSql()) st.execute(sql);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(rows);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.chappie.bot.rag;
+
+/**
+ * Field encoding for PostgreSQL's COPY text format, as found in pg_dump output.
+ */
+final class CopyText {
+
+    static final String NULL = "\\N";
+
+    private CopyText() {
+    }
+
+    static String field(String value) {
+        if (value == null) return NULL;
+        StringBuilder sb = null;
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            String escaped = switch (ch) {
+                case '\\' -> "\\\\";
+                case '\n' -> "\\n";
+                case '\r' -> "\\r";
+                case '\t' -> "\\t";
+                case '\b' -> "\\b";
+                case '\f' -> "\\f";
+                case 0x0B -> "\\v";
+                default -> null;
+            };
+            if (escaped != null && sb == null) {
+                sb = new StringBuilder(value.length() + 16).append(value, 0, i);
+            }
+            if (sb != null) {
+                if (escaped != null) sb.append(escaped);
+                else sb.append(ch);
+            }
+        }
+        return sb == null ? value : sb.toString();
+    }
+
+    /**
+     * Inverse of {@link #field(String)}.
+     */
+    static String decode(String field) {
+        if (NULL.equals(field)) return null;
+        if (field.indexOf('\\') < 0) return field;
+        StringBuilder sb = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char ch = field.charAt(i);
+            if (ch != '\\' || i + 1 == field.length()) {
+                sb.append(ch);
+                continue;
+            }
+            char next = field.charAt(++i);
+            sb.append(switch (next) {
+                case 'n' -> '\n';
+                case 'r' -> '\r';
+                case 't' -> '\t';
+                case 'b' -> '\b';
+                case 'f' -> '\f';
+                case 'v' -> (char) 0x0B;
+                default -> next;
+            });
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Array literal, e.g. for REAL[]: {@code {0.1,0.2}}.
+     */
+    static String array(float[] values) {
+        StringBuilder sb = new StringBuilder(values.length * 12 + 2).append('{');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(values[i]);
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Array literal of plain tokens that need no quoting (uuids, numbers).
+     */
+    static String array(String[] values) {
+        return values == null ? NULL : "{" + String.join(",", values) + "}";
+    }
+
+    static String row(String... fields) {
+        return String.join("\t", fields) + "\n";
+    }
+}
@@ -0,0 +1,248 @@
+package org.chappie.bot.rag;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import javax.sql.DataSource;
+
+import org.jboss.logging.Logger;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.pgvector.PgVectorEmbeddingStore;
+
+/**
+ * Writes the init SQL straight from the embedding stage, without a database: the same files
+ * {@link InitDbLayers} gets from pg_dump, with rag_documents in the layout PgVectorEmbeddingStore
+ * creates and reads (uuid id, vector, text, JSON metadata).
+ */
+class DirectDump {
+
+    private static final Logger LOG = Logger.getLogger(DirectDump.class);
+
+    static final String TABLE = "rag_documents";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final int dimension;
+    private final SegmentSpool rows;
+
+    DirectDump(int dimension, SegmentSpool rows) {
+        this.dimension = dimension;
+        this.rows = rows;
+    }
+
+    void write(InitDbLayers initDb, List<BakedTable> auxTables, IndexParams indexParams) throws IOException {
+        try (Writer out = initDb.open("00-schema.sql.gz")) {
+            out.write(InitDbLayers.header());
+            out.write("CREATE EXTENSION IF NOT EXISTS vector WITH SCHEMA public;\n\n");
+            out.write(createSql() + ";\n\n");
+            for (BakedTable aux : auxTables) {
+                out.write(aux.createSql() + ";\n\n");
+            }
+        }
+
+        List<String> columns = columns();
+        for (int shard = 0; shard < rows.shards(); shard++) {
+            try (Writer out = initDb.open(String.format("10-rag-documents-%02d.sql.gz", shard))) {
+                out.write(InitDbLayers.header());
+                out.write(InitDbLayers.copyHeader(TABLE, columns));
+                rows.forEach(shard, row -> out.write(row.line()));
+                out.write(InitDbLayers.copyTrailer());
+            }
+        }
+
+        for (BakedTable aux : auxTables) {
+            initDb.writeTable(aux);
+        }
+
+        try (Writer out = initDb.open("90-indexes.sql.gz")) {
+            out.write(InitDbLayers.header());
+            out.write("ALTER TABLE ONLY public." + TABLE + " ADD CONSTRAINT " + TABLE + "_pkey PRIMARY KEY (embedding_id);\n\n");
+            out.write(indexParams.createIndexSql(TABLE) + ";\n\n");
+            for (BakedTable aux : auxTables) {
+                for (String sql : aux.indexSql()) out.write(sql + ";\n\n");
+            }
+            out.write(indexParams.databaseSettingsSql());
+        }
+    }
+
+    String createSql() {
+        return "CREATE TABLE public." + TABLE + " ("
+                + "embedding_id uuid NOT NULL, "
+                + "embedding vector(" + dimension + "), "
+                + "text text, "
+                + "metadata json)";
+    }
+
+    List<String> columns() {
+        return List.of("embedding_id", "embedding", "text", "metadata");
+    }
+
+    /**
+     * Loads the written files into a database without these tables, the way the postgres entrypoint would, and
+     * checks row count, round-tripped rows, and that PgVectorEmbeddingStore can search the result. The loaded
+     * tables are dropped again afterwards, so the same database can verify the next variant. The database-wide
+     * search settings of {@code indexParams} are not applied, they would outlive the verification.
+     */
+    void verify(DataSource ds, InitDbLayers initDb, List<BakedTable> auxTables, IndexParams indexParams) throws Exception {
+        List<String> tables = new ArrayList<>();
+        tables.add(TABLE);
+        for (BakedTable aux : auxTables) tables.add(aux.name());
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+            for (String table : tables) {
+                try (ResultSet rs = st.executeQuery("SELECT to_regclass('public." + table + "') IS NULL")) {
+                    if (!rs.next() || !rs.getBoolean(1)) {
+                        throw new IllegalArgumentException("Verification database must not already contain " + table);
+                    }
+                }
+            }
+        }
+        try {
+            verifyLoaded(ds, initDb, indexParams.databaseSettingsSql().trim());
+        } finally {
+            try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
+                st.execute("DROP TABLE IF EXISTS public." + String.join(", public.", tables));
+            }
+        }
+    }
+
+    private void verifyLoaded(DataSource ds, InitDbLayers initDb, String skipSql) throws Exception {
+        long t0 = System.nanoTime();
+        List<SegmentSpool.Row> sample;
+        try (Connection c = ds.getConnection()) {
+            CopyManager copy = c.unwrap(PGConnection.class).getCopyAPI();
+            for (Path file : initDb.files()) {
+                run(c, copy, file, skipSql);
+            }
+
+            try (Statement st = c.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT count(*) FROM " + TABLE)) {
+                rs.next();
+                long count = rs.getLong(1);
+                if (count != rows.size()) {
+                    throw new IllegalStateException("Verification: expected " + rows.size() + " rows, found " + count);
+                }
+            }
+
+            sample = sample(20);
+            if (sample.isEmpty()) {
+                throw new IllegalStateException("Verification: nothing was dumped");
+            }
+            // Rows may share a vector (reused fragment chunks), so each row is looked up by id, and its
+            // vector is checked separately to be at distance 0 from the nearest stored one.
+            try (Statement st = c.createStatement()) {
+                st.execute("SET enable_indexscan = off"); // exact nearest neighbour
+            }
+            try (PreparedStatement byId = c.prepareStatement(
+                         "SELECT text, metadata::text, embedding::text FROM " + TABLE + " WHERE embedding_id = ?::uuid");
+                 PreparedStatement nearest = c.prepareStatement(
+                         "SELECT embedding <=> ?::vector AS distance FROM " + TABLE + " ORDER BY distance LIMIT 1")) {
+                for (SegmentSpool.Row row : sample) {
+                    float[] vector = row.vector();
+                    byId.setString(1, row.id());
+                    try (ResultSet rs = byId.executeQuery()) {
+                        boolean same = rs.next()
+                                && row.text().equals(rs.getString(1))
+                                && mapper.readTree(rs.getString(2)).equals(mapper.valueToTree(row.metadata()))
+                                && Arrays.equals(vector, VectorText.parse(rs.getString(3)));
+                        if (!same) {
+                            throw new IllegalStateException("Verification: row " + row.id() + " did not round-trip");
+                        }
+                    }
+                    nearest.setString(1, VectorText.format(vector));
+                    try (ResultSet rs = nearest.executeQuery()) {
+                        double distance = rs.next() ? rs.getDouble(1) : Double.NaN;
+                        if (!(Math.abs(distance) < 1e-6)) { // 0 up to float rounding
+                            throw new IllegalStateException("Verification: nearest neighbour of row " + row.id()
+                                    + " is at distance " + distance + ", expected 0");
+                        }
+                    }
+                }
+            }
+        }
+
+        PgVectorEmbeddingStore store = PgVectorEmbeddingStore.datasourceBuilder()
+                .datasource(ds)
+                .table(TABLE)
+                .dimension(dimension)
+                .createTable(false)
+                .build();
+        List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(sample.get(0).vector()))
+                .maxResults(3)
+                .build()).matches();
+        if (matches.isEmpty() || matches.get(0).embedded() == null) {
+            throw new IllegalStateException("Verification: PgVectorEmbeddingStore search returned no usable rows");
+        }
+        LOG.infof("[direct-dump] Verified %d rows against %s in %d ms", rows.size(),
+                matches.get(0).embedded().metadata().getString("repo_path"), (System.nanoTime() - t0) / 1_000_000);
+    }
+
+    /**
+     * Up to {@code n} rows picked with a fixed seed, in spool order.
+     */
+    private List<SegmentSpool.Row> sample(int n) throws IOException {
+        Random random = new Random(42);
+        double p = Math.min(1.0, (double) n / Math.max(1, rows.size()));
+        List<SegmentSpool.Row> sample = new ArrayList<>();
+        rows.forEach(row -> {
+            if (sample.isEmpty() || (sample.size() < n && random.nextDouble() < p)) sample.add(row);
+        });
+        return sample;
+    }
+
+    /**
+     * Minimal psql: statements end with ';' at end of line, COPY ... FROM stdin is followed by data up to '\.'.
+     * A statement equal to {@code skipSql} is not executed.
+     */
+    private static void run(Connection c, CopyManager copy, Path file, String skipSql) throws Exception {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            StringBuilder sql = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (sql.length() == 0 && (line.isBlank() || line.startsWith("--"))) continue;
+                if (sql.length() == 0 && line.startsWith("COPY ") && line.endsWith(" FROM stdin;")) {
+                    StringBuilder data = new StringBuilder();
+                    String row;
+                    while ((row = in.readLine()) != null && !row.equals("\\.")) {
+                        data.append(row).append('\n');
+                    }
+                    copy.copyIn(line.substring(0, line.length() - " FROM stdin;".length()) + " FROM STDIN",
+                            new StringReader(data.toString()));
+                    continue;
+                }
+                sql.append(line).append('\n');
+                if (line.trim().endsWith(";")) {
+                    if (!sql.toString().trim().equals(skipSql)) {
+                        try (Statement st = c.createStatement()) {
+                            st.execute(sql.toString());
+                        }
+                    }
+                    sql.setLength(0);
+                }
+            }
+        }
+    }
+}
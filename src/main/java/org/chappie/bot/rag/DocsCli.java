@@ -11,7 +11,11 @@ import static picocli.CommandLine.Command;
   subcommands = {
       FindCommand.class,
       ManifestEnrichCommand.class,
-      BakeImageCommand.class
+      BakeImageCommand.class,
+      IndexTuneCommand.class,
+      ServeCommand.class,
+      GenerateCorpusCommand.class,
+      HybridBenchCommand.class
   },
   description = "RAG helper CLI for Quarkus docs"
 )
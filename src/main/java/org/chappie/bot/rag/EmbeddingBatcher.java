@@ -0,0 +1,119 @@
+package org.chappie.bot.rag;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.logging.Logger;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+
+/**
+ * Micro-batches query embeddings: a single worker takes whatever requests queued up while the
+ * previous batch was running and embeds them in one {@code embedAll} call. With no load a request
+ * is embedded on its own immediately; under load batches grow up to {@code maxBatch}.
+ */
+class EmbeddingBatcher implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(EmbeddingBatcher.class);
+
+    private record Pending(String text, CompletableFuture<float[]> result) {
+    }
+
+    private final EmbeddingModel model;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long batches;
+    private long embedded;
+
+    /**
+     * @param maxWaitMillis how long to hold a non-full batch open for more requests (0 = never wait)
+     */
+    EmbeddingBatcher(EmbeddingModel model, int maxBatch, long maxWaitMillis) {
+        this.model = model;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.worker = new Thread(this::loop, "embedding-batcher");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * The future fails with an {@link IllegalStateException} if the batcher is closed before the text is embedded.
+     */
+    CompletableFuture<float[]> embed(String text) {
+        CompletableFuture<float[]> f = new CompletableFuture<>();
+        queue.add(new Pending(text, f));
+        if (!running) failPending(new ArrayList<>()); // closed meanwhile, the worker may be gone
+        return f;
+    }
+
+    synchronized double meanBatchSize() {
+        return batches == 0 ? 0 : (double) embedded / batches;
+    }
+
+    private void loop() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        try {
+            while (running) {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatch - batch.size());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatch && maxWaitNanos > 0) {
+                    Pending p = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (p == null) break;
+                    batch.add(p);
+                }
+                run(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            failPending(batch);
+        }
+    }
+
+    /**
+     * Fails {@code batch} and everything still queued, so no caller waits on a request that will never run.
+     */
+    private void failPending(List<Pending> batch) {
+        queue.drainTo(batch);
+        if (batch.isEmpty()) return;
+        IllegalStateException closed = new IllegalStateException("Embedding batcher closed");
+        batch.forEach(p -> p.result().completeExceptionally(closed));
+        batch.clear();
+    }
+
+    private void run(List<Pending> batch) {
+        try {
+            List<TextSegment> segments = batch.stream().map(p -> TextSegment.from(p.text())).toList();
+            List<Embedding> embeddings = model.embedAll(segments).content();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(embeddings.get(i).vector());
+            }
+            synchronized (this) {
+                batches++;
+                embedded += batch.size();
+            }
+        } catch (Throwable t) {
+            LOG.warn("[serve] embedding batch failed", t);
+            batch.forEach(p -> p.result().completeExceptionally(t));
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+        failPending(new ArrayList<>());
+    }
+}
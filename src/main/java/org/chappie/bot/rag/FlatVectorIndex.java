@@ -0,0 +1,187 @@
+package org.chappie.bot.rag;
+
+import java.util.Arrays;
+import java.util.List;
+
+import dev.langchain4j.data.embedding.Embedding;
+
+/**
+ * Exact (brute-force) cosine search over vectors packed into one contiguous float[].
+ *
+ * Vectors are L2-normalized on the way in, so similarity is a plain dot product.
+ * For a corpus the size of the Quarkus docs this is a few milliseconds per query
+ * and is the ground truth the approximate indexes are measured against.
+ */
+class FlatVectorIndex {
+
+    private final int dim;
+    private final int size;
+    private final float[] data;
+
+    FlatVectorIndex(int dim, int size, float[] data) {
+        if (data.length != dim * size) {
+            throw new IllegalArgumentException("Expected " + (dim * size) + " floats, got " + data.length);
+        }
+        this.dim = dim;
+        this.size = size;
+        this.data = data;
+    }
+
+    static FlatVectorIndex of(List<Embedding> embeddings) {
+        if (embeddings.isEmpty()) {
+            throw new IllegalArgumentException("No embeddings to index");
+        }
+        int dim = embeddings.get(0).dimension();
+        float[] data = new float[dim * embeddings.size()];
+        for (int i = 0; i < embeddings.size(); i++) {
+            float[] v = normalize(embeddings.get(i).vector());
+            System.arraycopy(v, 0, data, i * dim, dim);
+        }
+        return new FlatVectorIndex(dim, embeddings.size(), data);
+    }
+
+    int dim() {
+        return dim;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns a copy of the (normalized) vector at row {@code i}.
+     */
+    float[] vector(int i) {
+        float[] v = new float[dim];
+        System.arraycopy(data, i * dim, v, 0, dim);
+        return v;
+    }
+
+    /**
+     * Returns the rows of the {@code k} most similar vectors, best first.
+     *
+     * @param query   query vector, normalized by this method
+     * @param k       number of results
+     * @param exclude row to skip (e.g. the query itself when sampling from the corpus), or -1
+     */
+    int[] topK(float[] query, int k, int exclude) {
+        float[] q = normalize(query);
+        int n = Math.min(k, exclude >= 0 && exclude < size ? size - 1 : size);
+        int[] rows = new int[n];
+        float[] scores = new float[n];
+        int filled = 0;
+
+        for (int row = 0; row < size; row++) {
+            if (row == exclude) continue;
+            float s = dot(q, data, row * dim, dim);
+            if (filled < n) {
+                insert(rows, scores, filled++, row, s);
+            } else if (n > 0 && s > scores[n - 1]) {
+                insert(rows, scores, n - 1, row, s);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Running top-k of ids by score, for vectors streamed past a query instead of packed into an index.
+     */
+    static final class TopK {
+
+        private final String[] ids;
+        private final float[] scores;
+        private int filled;
+
+        TopK(int k) {
+            this.ids = new String[k];
+            this.scores = new float[k];
+        }
+
+        void offer(String id, float score) {
+            int n = ids.length;
+            if (filled < n) {
+                insert(filled++, id, score);
+            } else if (n > 0 && score > scores[n - 1]) {
+                insert(n - 1, id, score);
+            }
+        }
+
+        /**
+         * The ids seen so far with the highest scores, best first.
+         */
+        String[] ids() {
+            return Arrays.copyOf(ids, filled);
+        }
+
+        private void insert(int pos, String id, float score) {
+            int i = pos;
+            while (i > 0 && scores[i - 1] < score) {
+                ids[i] = ids[i - 1];
+                scores[i] = scores[i - 1];
+                i--;
+            }
+            ids[i] = id;
+            scores[i] = score;
+        }
+    }
+
+    /**
+     * Cosine similarity of two vectors already passed through {@link #normalize(float[])}.
+     */
+    static float dot(float[] a, float[] b) {
+        return dot(a, b, 0, a.length);
+    }
+
+    float score(float[] query, int row) {
+        return dot(normalize(query), data, row * dim, dim);
+    }
+
+    // Insertion into a small sorted array; k is tiny so this beats a heap.
+    private static void insert(int[] rows, float[] scores, int pos, int row, float score) {
+        int i = pos;
+        while (i > 0 && scores[i - 1] < score) {
+            rows[i] = rows[i - 1];
+            scores[i] = scores[i - 1];
+            i--;
+        }
+        rows[i] = row;
+        scores[i] = score;
+    }
+
+    private static float dot(float[] q, float[] data, int offset, int dim) {
+        float s = 0f;
+        for (int i = 0; i < dim; i++) {
+            s += q[i] * data[offset + i];
+        }
+        return s;
+    }
+
+    static float[] normalize(float[] v) {
+        double norm = 0;
+        for (float x : v) norm += (double) x * x;
+        norm = Math.sqrt(norm);
+        float[] out = new float[v.length];
+        if (norm == 0) return out;
+        for (int i = 0; i < v.length; i++) {
+            out[i] = (float) (v[i] / norm);
+        }
+        return out;
+    }
+
+    /**
+     * Fraction of {@code expected} found in {@code actual}.
+     */
+    static double recall(int[] expected, int[] actual) {
+        if (expected.length == 0) return 1.0;
+        int hits = 0;
+        for (int e : expected) {
+            for (int a : actual) {
+                if (a == e) {
+                    hits++;
+                    break;
+                }
+            }
+        }
+        return (double) hits / expected.length;
+    }
+}
@@ -0,0 +1,339 @@
+package org.chappie.bot.rag;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import org.jboss.logging.Logger;
+
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+/**
+ * Generates a synthetic Quarkus-like AsciiDoc tree for scaling benchmarks.
+ *
+ * The shape follows what {@link AsciiDocSemanticSplitter} sees in the real docs: an attribute header
+ * (including {@code :categories:}, {@code :summary:}, {@code :extensions:}, {@code :topics:}),
+ * section depths that mostly stay at == and ===, log-normal section sizes (many sections below the
+ * merge threshold, a tail above the chunk size), listing blocks, config property tables and shared
+ * include fragments. Guide {@code i} only depends on the seed and {@code i}, so a larger corpus
+ * contains the smaller one.
+ */
+@Command(
+    name = "generate-corpus",
+    mixinStandardHelpOptions = true,
+    description = "Generate a synthetic AsciiDoc docs tree of configurable size for benchmarks."
+)
+public class GenerateCorpusCommand implements Callable<Integer> {
+
+    private static final Logger LOG = Logger.getLogger(GenerateCorpusCommand.class);
+
+    @Option(names = "--repo-root", required = true,
+            description = "Directory to generate into; the docs go under --docs-subdir, as in a quarkus checkout.")
+    Path repoRoot;
+
+    @Option(names = "--docs-subdir", defaultValue = "docs/src/main/asciidoc",
+            description = "Relative docs path under root (default: ${DEFAULT-VALUE}).")
+    String docsSubdir;
+
+    @Option(names = "--guides", defaultValue = "300",
+            description = "Number of guides at scale 1, roughly the size of the Quarkus docs (default: ${DEFAULT-VALUE}).")
+    int guides;
+
+    @Option(names = "--scale", defaultValue = "1",
+            description = "Multiplier for --guides (default: ${DEFAULT-VALUE}).")
+    int scale;
+
+    @Option(names = "--section-chars", defaultValue = "700",
+            description = "Median section body size in characters (default: ${DEFAULT-VALUE}).")
+    int sectionChars;
+
+    @Option(names = "--include-fragments", defaultValue = "20",
+            description = "Number of shared fragments under includes/ that guides include (default: ${DEFAULT-VALUE}).")
+    int includeFragments;
+
+    @Option(names = "--seed", defaultValue = "42", description = "Random seed (default: ${DEFAULT-VALUE}).")
+    long seed;
+
+    private static final String[] EXTENSIONS = {
+            "rest", "rest-client", "hibernate-orm", "hibernate-orm-panache", "hibernate-validator", "smallrye-openapi",
+            "smallrye-health", "micrometer", "opentelemetry", "kafka", "messaging-amqp", "oidc", "security-jpa",
+            "scheduler", "cache", "redis-client", "mongodb-client", "grpc", "websockets-next", "qute", "jdbc-postgresql",
+            "flyway", "liquibase", "kubernetes", "container-image-jib", "vertx", "arc", "config-yaml", "logging-json",
+            "mailer", "langchain4j-openai", "picocli", "amazon-lambda", "infinispan-client", "elasticsearch-rest-client"
+    };
+    private static final String[] CATEGORIES = {
+            "web", "data", "security", "messaging", "observability", "cloud", "core", "tooling", "integration", "miscellaneous"
+    };
+    private static final String[] TOPICS = {
+            "rest", "persistence", "configuration", "testing", "native", "kubernetes", "reactive", "security",
+            "observability", "messaging", "dev-services", "devmode", "cdi", "serialization", "scheduling"
+    };
+    private static final String[] WORDS = {
+            "application", "extension", "configuration", "property", "runtime", "build", "time", "bean", "endpoint",
+            "request", "response", "service", "client", "server", "database", "connection", "pool", "native",
+            "executable", "container", "image", "cluster", "deployment", "dependency", "module", "project", "test",
+            "mode", "development", "production", "profile", "value", "default", "setting", "resource", "method",
+            "class", "interface", "annotation", "injection", "scope", "event", "message", "channel", "stream",
+            "reactive", "blocking", "thread", "worker", "event loop", "metrics", "health", "check", "trace", "log",
+            "token", "user", "role", "tenant", "schema", "entity", "repository", "query", "transaction", "cache",
+            "key", "index", "startup", "memory", "footprint", "guide", "example", "step", "command", "file",
+            "the", "a", "to", "of", "and", "in", "is", "you", "can", "with", "for", "this", "when", "that", "by",
+            "use", "uses", "enable", "configure", "create", "add", "run", "define", "expose", "provide", "set"
+    };
+    private static final String[] ANNOTATIONS = {
+            "@ApplicationScoped", "@Inject", "@Path", "@GET", "@POST", "@Produces", "@ConfigProperty", "@Transactional",
+            "@QuarkusTest", "@Incoming", "@Outgoing", "@Scheduled", "@RolesAllowed", "@Startup", "@Singleton",
+            "@RegisterRestClient", "@ConfigMapping", "@Blocking", "@Entity", "@Observes"
+    };
+    private static final String[] TYPES = {
+            "GreetingResource", "FruitRepository", "PanacheEntity", "RestResponse", "EntityManager", "Uni", "Multi",
+            "MeterRegistry", "SecurityIdentity", "JsonWebToken", "ConfigProvider", "StartupEvent", "Emitter",
+            "HealthCheckResponse", "ReactiveMailer", "RoutingContext", "KafkaRecord", "TemplateInstance"
+    };
+    private static final String[] PROPERTY_LEAVES = {
+            "enabled", "url", "port", "host", "timeout", "max-size", "min-size", "username", "password",
+            "database.generation", "log.sql", "path", "root-path", "devservices.enabled", "tls-configuration-name",
+            "auth-server-url", "client-id", "batch-size", "interval", "retries"
+    };
+
+    @Override
+    public Integer call() throws Exception {
+        if (guides <= 0 || scale <= 0 || sectionChars <= 0 || includeFragments < 0) {
+            LOG.error("[generate] --guides, --scale and --section-chars must be positive, --include-fragments >= 0");
+            return 2;
+        }
+        long t0 = System.nanoTime();
+        Path docs = repoRoot.resolve(docsSubdir).normalize();
+        Files.createDirectories(docs.resolve("includes"));
+
+        long bytes = 0;
+        bytes += write(docs.resolve("_attributes.adoc"), attributesFile());
+        for (int f = 0; f < includeFragments; f++) {
+            bytes += write(docs.resolve("includes/" + fragmentName(f)), fragment(new Random(seed * 7919 + f), f));
+        }
+
+        int total = guides * scale;
+        long sections = 0;
+        for (int i = 0; i < total; i++) {
+            Random rnd = new Random(seed * 1_000_003L + i);
+            StringBuilder sb = new StringBuilder();
+            sections += guide(rnd, i, sb);
+            bytes += write(docs.resolve(String.format("guide-%06d.adoc", i)), sb.toString());
+            if ((i + 1) % 1000 == 0) {
+                LOG.infof("[generate] %d / %d ...", i + 1, total);
+            }
+        }
+        LOG.infof("[generate] Wrote %d guides (%d sections) and %d include fragments, %d bytes, to %s in %d ms",
+                total, sections, includeFragments + 1, bytes, docs, (System.nanoTime() - t0) / 1_000_000);
+        return 0;
+    }
+
+    /**
+     * Appends one guide and returns its number of sections.
+     */
+    private int guide(Random rnd, int index, StringBuilder sb) {
+        String ext = pick(rnd, EXTENSIONS);
+        String title = capitalize(phrase(rnd, 2 + rnd.nextInt(4))) + " with " + ext;
+
+        sb.append("////\nThis guide is maintained in the main Quarkus repository\n////\n");
+        sb.append("= ").append(title).append('\n');
+        sb.append("include::_attributes.adoc[]\n");
+        sb.append(":categories: ").append(pick(rnd, CATEGORIES)).append('\n');
+        sb.append(":summary: ").append(capitalize(sentence(rnd))).append('\n');
+        sb.append(":extensions: io.quarkus:quarkus-").append(ext);
+        if (rnd.nextDouble() < 0.4) sb.append(",io.quarkus:quarkus-").append(pick(rnd, EXTENSIONS));
+        sb.append('\n');
+        sb.append(":topics: ").append(pick(rnd, TOPICS)).append(',').append(pick(rnd, TOPICS)).append('\n');
+        sb.append(":diataxis-type: ").append(pick(rnd, new String[]{"tutorial", "howto", "concept", "reference"})).append('\n');
+        sb.append(":guide-id: guide-").append(index).append("\n\n");
+        sb.append(paragraph(rnd, sectionChars / 2)).append('\n');
+
+        // Section count and depth: most guides have 4-15 sections; depth walks down rarely and up often
+        int sectionCount = 3 + (int) Math.round(logNormal(rnd, 8, 0.6));
+        int level = 2;
+        for (int s = 0; s < sectionCount; s++) {
+            double r = rnd.nextDouble();
+            if (level < 5 && r < (level == 2 ? 0.45 : 0.2)) {
+                level++;
+            } else if (level > 2 && r > 0.6) {
+                level = 2 + rnd.nextInt(level - 1);
+            }
+            sb.append('[').append("[section-").append(index).append('-').append(s).append("]]\n");
+            sb.append("=".repeat(level)).append(' ').append(capitalize(phrase(rnd, 2 + rnd.nextInt(5)))).append("\n\n");
+
+            int budget = (int) Math.max(80, logNormal(rnd, sectionChars, 0.9));
+            while (budget > 0) {
+                double block = rnd.nextDouble();
+                String text;
+                if (block < 0.25) {
+                    text = listing(rnd);
+                } else if (block < 0.3) {
+                    text = configTable(rnd, ext);
+                } else if (block < 0.35) {
+                    text = admonition(rnd);
+                } else {
+                    text = paragraph(rnd, Math.min(budget, 200 + rnd.nextInt(500)));
+                }
+                sb.append(text).append('\n');
+                budget -= text.length();
+            }
+            if (includeFragments > 0 && rnd.nextDouble() < 0.08) {
+                sb.append("include::includes/").append(fragmentName(rnd.nextInt(includeFragments))).append("[]\n\n");
+            }
+        }
+        return sectionCount;
+    }
+
+    private String attributesFile() {
+        return ":quarkus-version: 999-SNAPSHOT\n"
+                + ":maven-version: 3.9.9\n"
+                + ":jdk-version-prerequisite: 17\n"
+                + ":quickstarts-base-url: https://github.com/quarkusio/quarkus-quickstarts\n"
+                + ":quarkus-home-url: https://quarkus.io\n";
+    }
+
+    private static String fragmentName(int f) {
+        return String.format("fragment-%03d.adoc", f);
+    }
+
+    private String fragment(Random rnd, int f) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[NOTE]\n====\n").append(paragraph(rnd, 200)).append("====\n\n");
+        sb.append(paragraph(rnd, 300 + rnd.nextInt(400))).append('\n');
+        if (f % 2 == 0) sb.append(listing(rnd)).append('\n');
+        sb.append("The current version is {quarkus-version}.\n");
+        return sb.toString();
+    }
+
+    private String listing(Random rnd) {
+        StringBuilder sb = new StringBuilder();
+        double kind = rnd.nextDouble();
+        int lines = 3 + rnd.nextInt(18);
+        if (kind < 0.5) {
+            String type = pick(rnd, TYPES);
+            sb.append("[source,java]\n----\n");
+            sb.append("package org.acme;\n\n");
+            sb.append(pick(rnd, ANNOTATIONS)).append('\n');
+            sb.append("public class ").append(type).append(" {\n\n");
+            for (int l = 0; l < lines; l++) {
+                if (rnd.nextDouble() < 0.25) sb.append("    ").append(pick(rnd, ANNOTATIONS)).append('\n');
+                sb.append("    ").append(pick(rnd, TYPES)).append(' ').append(camel(rnd)).append(" = ")
+                        .append(camel(rnd)).append('.').append(camel(rnd)).append("();\n");
+            }
+            sb.append("}\n----\n");
+        } else if (kind < 0.75) {
+            sb.append("[source,properties]\n----\n");
+            for (int l = 0; l < Math.min(lines, 8); l++) {
+                sb.append(property(rnd, pick(rnd, EXTENSIONS))).append('=').append(value(rnd)).append('\n');
+            }
+            sb.append("----\n");
+        } else if (kind < 0.9) {
+            sb.append("[source,xml,subs=attributes+]\n----\n<dependency>\n");
+            sb.append("    <groupId>io.quarkus</groupId>\n");
+            sb.append("    <artifactId>quarkus-").append(pick(rnd, EXTENSIONS)).append("</artifactId>\n");
+            sb.append("</dependency>\n----\n");
+        } else {
+            sb.append("[source,bash,subs=attributes+]\n----\n");
+            sb.append("quarkus ext add ").append(pick(rnd, EXTENSIONS)).append('\n');
+            sb.append("./mvnw quarkus:dev -Dquarkus.profile=").append(pick(rnd, new String[]{"dev", "test", "prod"})).append('\n');
+            sb.append("----\n");
+        }
+        return sb.toString();
+    }
+
+    private String configTable(Random rnd, String ext) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[.configuration-reference, cols=\"80,.^10,.^10\"]\n|===\n");
+        sb.append("h|Configuration property\nh|Type\nh|Default\n\n");
+        int rows = 2 + rnd.nextInt(6);
+        for (int r = 0; r < rows; r++) {
+            sb.append("a| `").append(property(rnd, ext)).append("`\n\n");
+            sb.append(capitalize(sentence(rnd))).append("\n\n");
+            sb.append("Environment variable: `").append(property(rnd, ext).toUpperCase(Locale.ROOT)
+                    .replace('.', '_').replace('-', '_')).append("`\n");
+            sb.append("|").append(pick(rnd, new String[]{"boolean", "string", "int", "Duration", "list of string"})).append('\n');
+            sb.append("|`").append(value(rnd)).append("`\n\n");
+        }
+        sb.append("|===\n");
+        return sb.toString();
+    }
+
+    private String admonition(Random rnd) {
+        return pick(rnd, new String[]{"NOTE", "TIP", "IMPORTANT", "WARNING"}) + ": " + capitalize(sentence(rnd)) + "\n";
+    }
+
+    private String paragraph(Random rnd, int chars) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < chars) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(capitalize(sentence(rnd)));
+        }
+        return sb.append('\n').toString();
+    }
+
+    private String sentence(Random rnd) {
+        StringBuilder sb = new StringBuilder(phrase(rnd, 6 + rnd.nextInt(14)));
+        double r = rnd.nextDouble();
+        if (r < 0.15) {
+            sb.append(" using `").append(property(rnd, pick(rnd, EXTENSIONS))).append('`');
+        } else if (r < 0.25) {
+            sb.append(" with `").append(pick(rnd, ANNOTATIONS)).append('`');
+        } else if (r < 0.35) {
+            sb.append(" in `").append(pick(rnd, TYPES)).append('#').append(camel(rnd)).append("()`");
+        } else if (r < 0.4) {
+            sb.append(" (see xref:guide-").append(String.format("%06d", rnd.nextInt(Math.max(1, guides)))).append(".adoc[])");
+        }
+        return sb.append('.').toString();
+    }
+
+    private String phrase(Random rnd, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            if (w > 0) sb.append(' ');
+            sb.append(pick(rnd, WORDS));
+        }
+        return sb.toString();
+    }
+
+    private String property(Random rnd, String ext) {
+        return "quarkus." + ext.replace("-client", "").replace("-", ".") + "." + pick(rnd, PROPERTY_LEAVES);
+    }
+
+    private String value(Random rnd) {
+        return switch (rnd.nextInt(4)) {
+            case 0 -> String.valueOf(rnd.nextBoolean());
+            case 1 -> String.valueOf(1 + rnd.nextInt(1000));
+            case 2 -> (1 + rnd.nextInt(60)) + "s";
+            default -> pick(rnd, WORDS).replace(' ', '-');
+        };
+    }
+
+    private String camel(Random rnd) {
+        String a = pick(rnd, WORDS).replace(" ", "");
+        String b = pick(rnd, WORDS).replace(" ", "");
+        return a + capitalize(b);
+    }
+
+    private static double logNormal(Random rnd, double median, double sigma) {
+        return median * Math.exp(sigma * rnd.nextGaussian());
+    }
+
+    private static String pick(Random rnd, String[] values) {
+        return values[rnd.nextInt(values.length)];
+    }
+
+    private static String capitalize(String s) {
+        return s.isEmpty() ? s : Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+
+    private static long write(Path file, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        Files.write(file, bytes);
+        return bytes.length;
+    }
+}
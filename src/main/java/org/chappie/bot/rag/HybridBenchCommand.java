@@ -0,0 +1,232 @@
+package org.chappie.bot.rag;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.jboss.logging.Logger;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+@Command(
+    name = "hybrid-bench",
+    mixinStandardHelpOptions = true,
+    description = "Compare pure vector search with lexical prefiltering (rag_lexical) followed by vector ranking on a baked store: p50/p99 latency, candidate counts and top-k overlap."
+)
+public class HybridBenchCommand implements Callable<Integer> {
+
+    private static final Logger LOG = Logger.getLogger(HybridBenchCommand.class);
+
+    @Option(names = "--image",
+            description = "Baked image to start with Testcontainers (baked with --lexical-index).")
+    String image;
+
+    @Option(names = "--jdbc-url",
+            description = "Use an already running baked database instead of --image.")
+    String jdbcUrl;
+
+    @Option(names = "--username", defaultValue = "postgres", description = "Database user for --jdbc-url (default: ${DEFAULT-VALUE}).")
+    String username;
+
+    @Option(names = "--password", defaultValue = "postgres", description = "Database password for --jdbc-url (default: ${DEFAULT-VALUE}).")
+    String password;
+
+    @Option(names = "--queries", required = true,
+            description = "Questions, one per line ('#' starts a comment). Include some naming exact identifiers (config properties, annotations, artifact ids).")
+    Path queriesFile;
+
+    @Option(names = "--k", defaultValue = "10", description = "Results per query (default: ${DEFAULT-VALUE}).")
+    int k;
+
+    @Option(names = "--max-candidates", defaultValue = "2000",
+            description = "Above this many lexical matches the prefilter is not selective and the hybrid path falls back to vector search (default: ${DEFAULT-VALUE}).")
+    int maxCandidates;
+
+    @Option(names = "--repeat", defaultValue = "3", description = "Times each query is measured (default: ${DEFAULT-VALUE}).")
+    int repeat;
+
+    @Option(names = "--out", description = "Write per-query results as CSV.")
+    Path out;
+
+    @Override
+    public Integer call() throws Exception {
+        long t0 = System.nanoTime();
+        LOG.infof("[hybrid-bench] started at %s", Instant.now());
+        if ((image == null) == (jdbcUrl == null)) {
+            LOG.error("[hybrid-bench] Exactly one of --image or --jdbc-url is required");
+            return 2;
+        }
+        if (k <= 0 || repeat <= 0 || maxCandidates <= 0) {
+            LOG.error("[hybrid-bench] --k, --repeat and --max-candidates must be positive");
+            return 2;
+        }
+
+        try (BakedDatabase db = BakedDatabase.open(image, jdbcUrl, username, password);
+             Connection c = db.connect()) {
+            try (Statement st = c.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT to_regclass('" + LexicalIndex.TABLE + "') IS NOT NULL")) {
+                if (!rs.next() || !rs.getBoolean(1)) {
+                    LOG.errorf("[hybrid-bench] No %s table; bake the image with --lexical-index", LexicalIndex.TABLE);
+                    return 2;
+                }
+            }
+
+            List<String> questions = QueryEmbeddingCache.readQueries(queriesFile);
+            if (questions.isEmpty()) {
+                LOG.errorf("[hybrid-bench] No queries in %s", queriesFile);
+                return 2;
+            }
+            PcaProjection projection = PcaProjection.load(c);
+            EmbeddingModel model = new BgeSmallEnV15QuantizedEmbeddingModel();
+            List<float[]> vectors = new ArrayList<>();
+            for (Embedding e : model.embedAll(questions.stream().map(TextSegment::from).toList()).content()) {
+                vectors.add(projection != null ? projection.project(e.vector()) : e.vector());
+            }
+
+            try (PreparedStatement vector = c.prepareStatement(
+                    "SELECT embedding_id FROM " + BakedStore.TABLE + " ORDER BY embedding <=> ?::vector LIMIT ?");
+                 // Distances are computed over the materialized candidates, so the ranking is exact and cannot
+                 // go through the approximate vector index; the count comes from the candidates alone and is
+                 // returned even when nothing matched or there are too many candidates to rank
+                 PreparedStatement hybrid = c.prepareStatement(
+                         "WITH candidates AS MATERIALIZED ("
+                                 + "SELECT embedding_id FROM " + LexicalIndex.TABLE + " WHERE terms @@ ?::tsquery LIMIT ?), "
+                                 + "ranked AS MATERIALIZED ("
+                                 + "SELECT d.embedding_id, d.embedding <=> ?::vector AS distance FROM " + BakedStore.TABLE + " d "
+                                 + "JOIN candidates USING (embedding_id) WHERE (SELECT count(*) FROM candidates) <= ?) "
+                                 + "SELECT (SELECT count(*) FROM candidates), r.embedding_id FROM (SELECT 1) one "
+                                 + "LEFT JOIN LATERAL (SELECT embedding_id FROM ranked ORDER BY distance, embedding_id LIMIT ?) r ON true")) {
+
+                // Warm up caches so neither path pays for the first reads
+                for (int i = 0; i < Math.min(20, questions.size()); i++) {
+                    vectorSearch(vector, vectors.get(i));
+                    String tsquery = LexicalIndex.tsquery(questions.get(i));
+                    if (tsquery != null) hybridSearch(hybrid, tsquery, vectors.get(i), new long[1]);
+                }
+
+                List<Result> results = new ArrayList<>();
+                for (int i = 0; i < questions.size(); i++) {
+                    String question = questions.get(i);
+                    float[] q = vectors.get(i);
+                    String tsquery = LexicalIndex.tsquery(question);
+
+                    long[] vectorNanos = new long[repeat];
+                    long[] hybridNanos = new long[repeat];
+                    List<String> vectorIds = null;
+                    List<String> hybridIds = null;
+                    long candidates = 0;
+                    for (int r = 0; r < repeat; r++) {
+                        long t = System.nanoTime();
+                        vectorIds = vectorSearch(vector, q);
+                        vectorNanos[r] = System.nanoTime() - t;
+
+                        t = System.nanoTime();
+                        long[] count = new long[1];
+                        hybridIds = tsquery != null ? hybridSearch(hybrid, tsquery, q, count) : List.of();
+                        candidates = count[0];
+                        if (candidates == 0 || candidates > maxCandidates) {
+                            hybridIds = vectorSearch(vector, q); // prefilter missed or was not selective
+                        }
+                        hybridNanos[r] = System.nanoTime() - t;
+                    }
+                    boolean prefiltered = candidates > 0 && candidates <= maxCandidates;
+                    long overlap = vectorIds.stream().filter(hybridIds::contains).count();
+                    results.add(new Result(question, tsquery, !LexicalIndex.identifiers(question).isEmpty(), prefiltered,
+                            candidates, vectorNanos, hybridNanos,
+                            vectorIds.isEmpty() ? 1.0 : (double) overlap / vectorIds.size()));
+                }
+
+                report("all", results);
+                report("identifier", results.stream().filter(Result::identifier).toList());
+                report("prefiltered", results.stream().filter(Result::prefiltered).toList());
+                if (out != null) writeCsv(results);
+            }
+            return 0;
+        } finally {
+            LOG.infof("[hybrid-bench] Done in %d ms", (System.nanoTime() - t0) / 1_000_000);
+        }
+    }
+
+    private List<String> vectorSearch(PreparedStatement ps, float[] query) throws Exception {
+        ps.setString(1, VectorText.format(query));
+        ps.setInt(2, k);
+        List<String> ids = new ArrayList<>(k);
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) ids.add(rs.getString(1));
+        }
+        return ids;
+    }
+
+    private List<String> hybridSearch(PreparedStatement ps, String tsquery, float[] query, long[] candidates) throws Exception {
+        ps.setString(1, tsquery);
+        ps.setInt(2, maxCandidates + 1);
+        ps.setString(3, VectorText.format(query));
+        ps.setInt(4, maxCandidates);
+        ps.setInt(5, k);
+        List<String> ids = new ArrayList<>(k);
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                candidates[0] = rs.getLong(1);
+                String id = rs.getString(2);
+                if (id != null) ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private void report(String label, List<Result> results) {
+        if (results.isEmpty()) {
+            LOG.infof("[hybrid-bench] %-11s no queries", label);
+            return;
+        }
+        long[] vector = results.stream().flatMapToLong(r -> Arrays.stream(r.vectorNanos)).toArray();
+        long[] hybrid = results.stream().flatMapToLong(r -> Arrays.stream(r.hybridNanos)).toArray();
+        long prefiltered = results.stream().filter(Result::prefiltered).count();
+        double candidates = results.stream().filter(Result::prefiltered).mapToLong(Result::candidates).average().orElse(0);
+        double overlap = results.stream().mapToDouble(Result::overlap).average().orElse(0);
+        LOG.infof("[hybrid-bench] %-11s %d queries: vector p50=%d us p99=%d us | hybrid p50=%d us p99=%d us | "
+                        + "prefiltered %d (mean %.0f candidates) | overlap@%d=%.3f",
+                label, results.size(),
+                LatencyStats.percentile(vector, 50) / 1000, LatencyStats.percentile(vector, 99) / 1000,
+                LatencyStats.percentile(hybrid, 50) / 1000, LatencyStats.percentile(hybrid, 99) / 1000,
+                prefiltered, candidates, k, overlap);
+    }
+
+    private void writeCsv(List<Result> results) throws Exception {
+        try (BufferedWriter w = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            w.write("query,tsquery,identifier,prefiltered,candidates,vector_p50_us,hybrid_p50_us,overlap\n");
+            for (Result r : results) {
+                w.write(String.join(",", csv(r.question), csv(r.tsquery), String.valueOf(r.identifier),
+                        String.valueOf(r.prefiltered), String.valueOf(r.candidates),
+                        String.valueOf(LatencyStats.percentile(r.vectorNanos, 50) / 1000),
+                        String.valueOf(LatencyStats.percentile(r.hybridNanos, 50) / 1000),
+                        String.format("%.3f", r.overlap)));
+                w.write('\n');
+            }
+        }
+        LOG.infof("[hybrid-bench] Wrote %s", out);
+    }
+
+    private static String csv(String value) {
+        return value == null ? "" : "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private record Result(String question, String tsquery, boolean identifier, boolean prefiltered, long candidates,
+            long[] vectorNanos, long[] hybridNanos, double overlap) {
+    }
+}
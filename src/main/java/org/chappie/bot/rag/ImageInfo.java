@@ -0,0 +1,67 @@
+package org.chappie.bot.rag;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-image values (Quarkus version, ...) baked into the small {@value #TABLE} table instead of into every
+ * rag_documents row, so a release that leaves a guide unchanged leaves its rows, and its shard layer, unchanged.
+ */
+class ImageInfo implements BakedTable {
+
+    static final String TABLE = "rag_image_info";
+
+    private final Map<String, String> values = new TreeMap<>();
+
+    ImageInfo put(String key, String value) {
+        if (value != null && !value.isBlank()) values.put(key, value);
+        return this;
+    }
+
+    @Override
+    public String name() {
+        return TABLE;
+    }
+
+    @Override
+    public String createSql() {
+        return "CREATE TABLE " + TABLE + " ("
+                + "key TEXT PRIMARY KEY, "
+                + "value TEXT NOT NULL)";
+    }
+
+    @Override
+    public List<String> columns() {
+        return List.of("key", "value");
+    }
+
+    @Override
+    public void writeRows(Writer out) throws IOException {
+        for (Map.Entry<String, String> e : values.entrySet()) {
+            out.write(CopyText.row(CopyText.field(e.getKey()), CopyText.field(e.getValue())));
+        }
+    }
+
+    /**
+     * Loads the values from a baked database; empty for images baked before the table existed.
+     */
+    static Map<String, String> load(Connection c) throws SQLException {
+        Map<String, String> values = new TreeMap<>();
+        try (Statement st = c.createStatement()) {
+            try (ResultSet rs = st.executeQuery("SELECT to_regclass('" + TABLE + "') IS NOT NULL")) {
+                if (!rs.next() || !rs.getBoolean(1)) return values;
+            }
+            try (ResultSet rs = st.executeQuery("SELECT key, value FROM " + TABLE)) {
+                while (rs.next()) values.put(rs.getString(1), rs.getString(2));
+            }
+        }
+        return values;
+    }
+}
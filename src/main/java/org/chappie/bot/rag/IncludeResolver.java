@@ -0,0 +1,403 @@
+package org.chappie.bot.rag;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Resolves AsciiDoc {@code include::} directives for ingestion, memoizing every include target so a
+ * shared fragment is read, attribute-substituted and parsed once per process, however many guides
+ * include it.
+ *
+ * Instead of inlining fragments into each guide, a guide resolves to its own body (include lines
+ * removed, attributes substituted) plus references to the {@link Fragment}s it includes. Callers can
+ * then split and embed each fragment once and reuse the result for every including guide.
+ *
+ * A fragment is cached per path, per include options and per value of the attributes it reads from the
+ * including file, its nested includes' reads included, so guides that include different tags of a file,
+ * or set those attributes differently, get their own copy. Attribute definitions in included files (e.g. {@code _attributes.adoc}) apply to the including
+ * file from that point on, as in Asciidoctor.
+ *
+ * Supported include options: {@code lines=}, {@code tag=}/{@code tags=} (names, {@code !name},
+ * {@code *} and {@code **}), {@code leveloffset=} and {@code opts=optional}. Tag directive lines are
+ * always dropped, they are markup and not content. Other options are ignored with a warning.
+ */
+class IncludeResolver {
+
+    private static final Logger LOG = Logger.getLogger(IncludeResolver.class);
+
+    private static final Pattern INCLUDE = Pattern.compile("^include::([^\\[]+)\\[(.*)]\\s*$");
+    private static final Pattern ATTRIBUTE = Pattern.compile("^:([\\w][\\w-]*):\\s*(.*?)\\s*$");
+    private static final Pattern REFERENCE = Pattern.compile("\\{([\\w][\\w-]*)}");
+    private static final Pattern TAG_DIRECTIVE = Pattern.compile("\\b(tag|end)::(\\S+?)\\[]");
+    private static final Pattern HEADING = Pattern.compile("^(=+)(\\s+\\S.*)$");
+    private static final Set<String> SUPPORTED_OPTIONS = Set.of(
+            "lines", "tag", "tags", "leveloffset", "opts", "options", "optional", "%optional");
+    private static final int MAX_DEPTH = 16;
+    static final String UNSET = "\0unset";
+
+    /**
+     * A resolved include target.
+     *
+     * @param key        cache key (path, include options and inputs)
+     * @param repoPath   path relative to the repo root
+     * @param attributes attributes defined by the fragment and the fragments it includes
+     * @param inputs     values of the attributes it and its nested includes read from the including file
+     *                   ({@link #UNSET} if undefined there)
+     * @param body       the fragment's own text, include lines removed, attributes substituted
+     * @param nested     contentful fragments it includes, in order
+     */
+    record Fragment(String key, String repoPath, Map<String, String> attributes, Map<String, String> inputs, String body,
+            List<Fragment> nested) {
+        boolean hasContent() {
+            return !body.isBlank();
+        }
+    }
+
+    /**
+     * @param body      the guide's own text, include lines removed, attributes substituted
+     * @param fragments distinct contentful fragments the guide includes (directly or nested), in order
+     */
+    record Resolved(String body, List<Fragment> fragments) {
+    }
+
+    private final Path repoRoot;
+    private final Map<Path, List<String>> rawLines = new ConcurrentHashMap<>();
+    private final Map<String, List<Fragment>> fragments = new ConcurrentHashMap<>();
+    private final Set<Path> missing = ConcurrentHashMap.newKeySet();
+    private final Set<String> warnedOptions = ConcurrentHashMap.newKeySet();
+    private int reads;
+    private int cacheHits;
+
+    IncludeResolver(Path repoRoot) {
+        this.repoRoot = repoRoot.toAbsolutePath().normalize();
+    }
+
+    Resolved resolve(Path guide, String text) {
+        Map<String, String> scope = new LinkedHashMap<>();
+        Set<Fragment> included = new LinkedHashSet<>();
+        String body = process(guide.toAbsolutePath().normalize(), List.of(text.split("\n", -1)), scope, new LinkedHashMap<>(),
+                new LinkedHashMap<>(), included, 0);
+        return new Resolved(body, List.copyOf(included));
+    }
+
+    /**
+     * Number of distinct fragments read from disk, and how many include directives were served from cache.
+     */
+    synchronized String stats() {
+        return reads + " fragments read, " + cacheHits + " includes served from cache";
+    }
+
+    /**
+     * @param defined attributes defined so far in this file (directly or by its includes)
+     * @param inputs  collects the attributes read from the including file's scope, i.e. before {@code defined}
+     */
+    private String process(Path file, List<String> lines, Map<String, String> scope, Map<String, String> defined,
+            Map<String, String> inputs, Set<Fragment> included, int depth) {
+        StringBuilder body = new StringBuilder();
+        boolean inListing = false;
+        for (String line : lines) {
+            if (line.startsWith("----")) {
+                inListing = !inListing;
+            }
+            // Includes are a preprocessor directive and apply inside listings too; attribute entries do not
+            Matcher inc = INCLUDE.matcher(line);
+            if (inc.matches()) {
+                Fragment f = include(file, substitute(inc.group(1).trim(), scope, defined, inputs), inc.group(2), scope, depth + 1);
+                if (f != null) {
+                    f.inputs().forEach((name, value) -> {
+                        if (!defined.containsKey(name)) inputs.putIfAbsent(name, value);
+                    });
+                    scope.putAll(f.attributes());
+                    defined.putAll(f.attributes());
+                    if (f.hasContent()) included.add(f);
+                    included.addAll(f.nested());
+                }
+                continue;
+            }
+            Matcher attr = inListing ? null : ATTRIBUTE.matcher(line);
+            if (attr != null && attr.matches()) {
+                String value = substitute(attr.group(2), scope, defined, inputs);
+                scope.put(attr.group(1), value);
+                defined.put(attr.group(1), value);
+                if (depth > 0) continue; // keeps attribute-only fragments such as _attributes.adoc empty
+            }
+            body.append(substitute(line, scope, defined, inputs)).append('\n');
+        }
+        return body.toString();
+    }
+
+    private Fragment include(Path from, String target, String options, Map<String, String> scope, int depth) {
+        if (target.contains("://") || target.contains("{")) {
+            return null; // remote include or unresolved attribute
+        }
+        Path path = from.getParent().resolve(target).normalize();
+        if (depth > MAX_DEPTH) {
+            LOG.warnf("[include] too deeply nested, skipping %s", path);
+            return null;
+        }
+        Map<String, String> opts = parseOptions(options);
+        for (String name : opts.keySet()) {
+            if (!SUPPORTED_OPTIONS.contains(name) && warnedOptions.add(name)) {
+                LOG.warnf("[include] option '%s' is not supported and is ignored (first seen in %s)", name, repoRelative(from));
+            }
+        }
+        boolean optional = opts.containsKey("optional") || opts.containsKey("%optional")
+                || opts.getOrDefault("opts", "").contains("optional") || opts.getOrDefault("options", "").contains("optional");
+        List<String> lines = read(path, optional);
+        if (lines == null) return null;
+        String selection = selection(opts);
+        lines = select(lines, opts, path);
+
+        // Each expansion of this path and selection is reusable wherever the attributes it read have the same values
+        String base = path + (selection.isEmpty() ? "" : "\0[" + selection + "]");
+        List<Fragment> expansions = fragments.computeIfAbsent(base, b -> new ArrayList<>());
+        synchronized (expansions) {
+            for (Fragment cached : expansions) {
+                if (matches(cached.inputs(), scope)) {
+                    synchronized (this) {
+                        cacheHits++;
+                    }
+                    return cached;
+                }
+            }
+        }
+
+        Map<String, String> local = new LinkedHashMap<>(scope);
+        Map<String, String> defined = new LinkedHashMap<>();
+        Map<String, String> inputs = new TreeMap<>();
+        Set<Fragment> nested = new LinkedHashSet<>();
+        String body = process(path, lines, local, defined, inputs, nested, depth);
+        StringBuilder key = new StringBuilder(base);
+        inputs.forEach((name, value) -> key.append('\0').append(name).append('=').append(value));
+        Fragment f = new Fragment(key.toString(), repoRelative(path), Map.copyOf(defined), Map.copyOf(inputs), body,
+                List.copyOf(nested));
+        synchronized (expansions) {
+            for (Fragment cached : expansions) {
+                if (cached.key().equals(f.key())) return cached;
+            }
+            expansions.add(f);
+        }
+        return f;
+    }
+
+    private static boolean matches(Map<String, String> inputs, Map<String, String> scope) {
+        for (Map.Entry<String, String> e : inputs.entrySet()) {
+            if (!e.getValue().equals(scope.getOrDefault(e.getKey(), UNSET))) return false;
+        }
+        return true;
+    }
+
+    private List<String> read(Path path, boolean optional) {
+        if (!Files.isRegularFile(path)) {
+            if (!optional && missing.add(path)) {
+                LOG.warnf("[include] not found: %s", path);
+            }
+            return null;
+        }
+        return rawLines.computeIfAbsent(path, p -> {
+            try {
+                synchronized (this) {
+                    reads++;
+                }
+                return List.of(Files.readString(p, StandardCharsets.UTF_8).split("\n", -1));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Parses an include attribute list such as {@code tags="a,b",leveloffset=+1,opts=optional}.
+     * Names without a value (e.g. {@code optional}) map to "".
+     */
+    static Map<String, String> parseOptions(String list) {
+        Map<String, String> opts = new LinkedHashMap<>();
+        int i = 0;
+        int n = list.length();
+        while (i < n) {
+            while (i < n && (list.charAt(i) == ',' || Character.isWhitespace(list.charAt(i)))) i++;
+            int start = i;
+            while (i < n && list.charAt(i) != '=' && list.charAt(i) != ',') i++;
+            String name = list.substring(start, i).trim();
+            String value = "";
+            if (i < n && list.charAt(i) == '=') {
+                i++;
+                while (i < n && Character.isWhitespace(list.charAt(i))) i++;
+                if (i < n && (list.charAt(i) == '"' || list.charAt(i) == '\'')) {
+                    char quote = list.charAt(i++);
+                    int end = list.indexOf(quote, i);
+                    if (end < 0) end = n;
+                    value = list.substring(i, end);
+                    i = Math.min(n, end + 1);
+                } else {
+                    start = i;
+                    while (i < n && list.charAt(i) != ',') i++;
+                    value = list.substring(start, i).trim();
+                }
+            }
+            if (!name.isEmpty()) opts.put(name, value);
+        }
+        return opts;
+    }
+
+    /**
+     * The options that change a fragment's content, normalized for the cache key.
+     */
+    private static String selection(Map<String, String> opts) {
+        StringBuilder sb = new StringBuilder();
+        for (String name : List.of("lines", "tag", "tags", "leveloffset")) {
+            String value = opts.get(name);
+            if (value != null) sb.append(name).append('=').append(value.replace(" ", "")).append(';');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Applies {@code lines=} (which wins over tags, as in Asciidoctor), {@code tag(s)=} and
+     * {@code leveloffset=}, and drops tag directive lines.
+     */
+    static List<String> select(List<String> lines, Map<String, String> opts, Path path) {
+        List<String> out = new ArrayList<>(lines.size());
+        if (opts.containsKey("lines")) {
+            boolean[] keep = lineRanges(opts.get("lines"), lines.size(), path);
+            for (int i = 0; i < lines.size(); i++) {
+                if (keep[i] && !TAG_DIRECTIVE.matcher(lines.get(i)).find()) out.add(lines.get(i));
+            }
+        } else {
+            String tags = opts.containsKey("tags") ? opts.get("tags") : opts.get("tag");
+            TagFilter filter = new TagFilter(tags);
+            Deque<String> active = new ArrayDeque<>();
+            for (String line : lines) {
+                Matcher m = TAG_DIRECTIVE.matcher(line);
+                if (m.find()) {
+                    if (m.group(1).equals("tag")) {
+                        active.push(m.group(2));
+                    } else {
+                        active.remove(m.group(2));
+                    }
+                    continue;
+                }
+                if (filter.selects(active)) out.add(line);
+            }
+        }
+
+        String offset = opts.get("leveloffset");
+        if (offset != null && !offset.isBlank()) {
+            int shift;
+            try {
+                shift = Integer.parseInt(offset.trim().startsWith("+") ? offset.trim().substring(1) : offset.trim());
+            } catch (NumberFormatException e) {
+                LOG.warnf("[include] ignoring leveloffset=%s in include of %s", offset, path);
+                return out;
+            }
+            boolean inListing = false;
+            for (int i = 0; i < out.size(); i++) {
+                String line = out.get(i);
+                if (line.startsWith("----")) inListing = !inListing;
+                Matcher h = inListing ? null : HEADING.matcher(line);
+                if (h != null && h.matches()) {
+                    int level = Math.max(1, Math.min(6, h.group(1).length() + shift));
+                    out.set(i, "=".repeat(level) + h.group(2));
+                }
+            }
+        }
+        return out;
+    }
+
+    private static boolean[] lineRanges(String spec, int size, Path path) {
+        boolean[] keep = new boolean[size];
+        for (String range : spec.split("[;,]")) {
+            String r = range.trim();
+            if (r.isEmpty()) continue;
+            try {
+                int dots = r.indexOf("..");
+                int from = Integer.parseInt(dots < 0 ? r : r.substring(0, dots).trim());
+                String toText = dots < 0 ? r : r.substring(dots + 2).trim();
+                int to = toText.isEmpty() || toText.equals("-1") ? size : Integer.parseInt(toText);
+                for (int i = Math.max(1, from); i <= Math.min(size, to); i++) keep[i - 1] = true;
+            } catch (NumberFormatException e) {
+                LOG.warnf("[include] ignoring line range '%s' in include of %s", r, path);
+            }
+        }
+        return keep;
+    }
+
+    /**
+     * Asciidoctor's tag selection: named tags and {@code !name} exclusions apply to the innermost tag
+     * with a rule; {@code *} covers every other tagged line, {@code **} every line; without a positive
+     * selector untagged lines are kept.
+     */
+    private static final class TagFilter {
+
+        private final Map<String, Boolean> named = new LinkedHashMap<>();
+        private Boolean anyTagged;
+        private boolean untagged = true;
+
+        TagFilter(String spec) {
+            if (spec == null || spec.isBlank()) return;
+            boolean positive = false;
+            Boolean all = null;
+            for (String t : spec.split("[;,]")) {
+                String tag = t.trim();
+                if (tag.isEmpty()) continue;
+                boolean include = !tag.startsWith("!");
+                String name = include ? tag : tag.substring(1);
+                switch (name) {
+                    case "**" -> all = include;
+                    case "*" -> anyTagged = include;
+                    default -> named.put(name, include);
+                }
+                if (include && !name.equals("**")) positive = true;
+            }
+            untagged = all != null ? all : !positive;
+            if (anyTagged == null && all != null) anyTagged = all;
+        }
+
+        boolean selects(Deque<String> active) {
+            for (String tag : active) {
+                Boolean rule = named.get(tag);
+                if (rule != null) return rule;
+            }
+            if (!active.isEmpty() && anyTagged != null) return anyTagged;
+            return untagged;
+        }
+    }
+
+    private String repoRelative(Path path) {
+        return path.startsWith(repoRoot) ? repoRoot.relativize(path).toString() : path.toString();
+    }
+
+    /**
+     * Replaces attribute references, recording in {@code inputs} those not (yet) defined in this file.
+     */
+    private static String substitute(String line, Map<String, String> scope, Map<String, String> defined,
+            Map<String, String> inputs) {
+        if (line.indexOf('{') < 0) return line;
+        Matcher m = REFERENCE.matcher(line);
+        StringBuilder sb = new StringBuilder();
+        while (m.find()) {
+            String value = scope.get(m.group(1));
+            if (!defined.containsKey(m.group(1))) inputs.putIfAbsent(m.group(1), value != null ? value : UNSET);
+            m.appendReplacement(sb, Matcher.quoteReplacement(value != null ? value : m.group()));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+}
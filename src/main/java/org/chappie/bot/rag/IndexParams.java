@@ -0,0 +1,125 @@
+package org.chappie.bot.rag;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.exc.ValueInstantiationException;
+
+/**
+ * Vector index settings for rag_documents: build-time parameters and the matching query-time setting.
+ * Written by {@code index-tune} and read by {@code bake-image --index-params}.
+ *
+ * @param type           "ivfflat" or "hnsw"
+ * @param lists          IVFFlat lists
+ * @param probes         IVFFlat probes at query time (0 = server default)
+ * @param m              HNSW max connections per layer
+ * @param efConstruction HNSW candidate list size at build time
+ * @param efSearch       HNSW candidate list size at query time (0 = server default)
+ */
+@JsonInclude(JsonInclude.Include.NON_DEFAULT)
+@JsonIgnoreProperties(ignoreUnknown = true)
+record IndexParams(String type, int lists, int probes, int m, int efConstruction, int efSearch) {
+
+    static final String IVFFLAT = "ivfflat";
+    static final String HNSW = "hnsw";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    /**
+     * Bounds enforced by pgvector, checked here so a bad file fails on load rather than in the index DDL.
+     */
+    IndexParams {
+        if (IVFFLAT.equals(type)) {
+            check(lists >= 1 && lists <= 32768, "ivfflat lists must be between 1 and 32768, got " + lists);
+            check(probes >= 0 && probes <= lists, "ivfflat probes must be between 1 and lists (" + lists + "), or 0 for the server default, got " + probes);
+        } else if (HNSW.equals(type)) {
+            check(m >= 2 && m <= 100, "hnsw m must be between 2 and 100, got " + m);
+            check(efConstruction >= 4 && efConstruction <= 1000, "hnsw ef_construction must be between 4 and 1000, got " + efConstruction);
+            check(efConstruction >= 2 * m, "hnsw ef_construction must be at least 2 * m (" + 2 * m + "), got " + efConstruction);
+            check(efSearch >= 0 && efSearch <= 1000, "hnsw ef_search must be between 1 and 1000, or 0 for the server default, got " + efSearch);
+        } else {
+            throw new IllegalArgumentException("Unknown index type: " + type);
+        }
+    }
+
+    private static void check(boolean cond, String message) {
+        if (!cond) throw new IllegalArgumentException(message);
+    }
+
+    /**
+     * What bake-image has always used: IVFFlat with 100 lists and default probes.
+     */
+    static IndexParams defaults() {
+        return ivfflat(100, 0);
+    }
+
+    static IndexParams ivfflat(int lists, int probes) {
+        return new IndexParams(IVFFLAT, lists, probes, 0, 0, 0);
+    }
+
+    static IndexParams hnsw(int m, int efConstruction, int efSearch) {
+        return new IndexParams(HNSW, 0, 0, m, efConstruction, efSearch);
+    }
+
+    static IndexParams read(Path file) throws IOException {
+        try {
+            return MAPPER.readValue(Files.readString(file), IndexParams.class);
+        } catch (ValueInstantiationException e) {
+            throw new IllegalArgumentException("Invalid index parameters in " + file + ": " + e.getCause().getMessage());
+        }
+    }
+
+    void write(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        MAPPER.writeValue(file.toFile(), this);
+    }
+
+    String indexName(String table) {
+        return table + "_" + type + "_index";
+    }
+
+    String createIndexSql(String table) {
+        String using = "CREATE INDEX " + indexName(table) + " ON " + table + " USING " + type + " (embedding vector_cosine_ops)";
+        if (IVFFLAT.equals(type)) {
+            return using + " WITH (lists = " + lists + ")";
+        }
+        return using + " WITH (m = " + m + ", ef_construction = " + efConstruction + ")";
+    }
+
+    /**
+     * Session-level statements that apply the query-time parameter.
+     */
+    List<String> sessionSettings() {
+        List<String> sql = new ArrayList<>();
+        if (IVFFLAT.equals(type) && probes > 0) sql.add("SET ivfflat.probes = " + probes);
+        if (HNSW.equals(type) && efSearch > 0) sql.add("SET hnsw.ef_search = " + efSearch);
+        return sql;
+    }
+
+    /**
+     * SQL that makes the query-time parameter the default for every session on the current database,
+     * for inclusion in the image's init scripts. Empty when the server default is kept.
+     */
+    String databaseSettingsSql() {
+        String setting = IVFFLAT.equals(type)
+                ? (probes > 0 ? "ivfflat.probes = " + probes : null)
+                : (efSearch > 0 ? "hnsw.ef_search = " + efSearch : null);
+        if (setting == null) return "";
+        return "DO $$ BEGIN EXECUTE format('ALTER DATABASE %I SET " + setting + "', current_database()); END $$;\n";
+    }
+
+    String describe() {
+        if (IVFFLAT.equals(type)) {
+            return "ivfflat lists=" + lists + " probes=" + (probes > 0 ? probes : "default");
+        }
+        return "hnsw m=" + m + " ef_construction=" + efConstruction + " ef_search=" + (efSearch > 0 ? efSearch : "default");
+    }
+}
@@ -0,0 +1,301 @@
+package org.chappie.bot.rag;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import org.jboss.logging.Logger;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Spec;
+
+@Command(
+    name = "index-tune",
+    mixinStandardHelpOptions = true,
+    description = "Sweep IVFFlat/HNSW parameters on a baked store, measure recall@k against exact search and p50/p99 latency, and emit the cheapest configuration meeting a target recall."
+)
+public class IndexTuneCommand implements Callable<Integer> {
+
+    private static final Logger LOG = Logger.getLogger(IndexTuneCommand.class);
+
+    @Spec
+    CommandSpec spec;
+
+    @Option(names = "--image",
+            description = "Baked image to start with Testcontainers (e.g. ghcr.io/quarkusio/chappie-ingestion-quarkus:3.26.3).")
+    String image;
+
+    @Option(names = "--jdbc-url",
+            description = "Use an already running baked database instead of --image.")
+    String jdbcUrl;
+
+    @Option(names = "--username", defaultValue = "postgres", description = "Database user for --jdbc-url (default: ${DEFAULT-VALUE}).")
+    String username;
+
+    @Option(names = "--password", defaultValue = "postgres", description = "Database password for --jdbc-url (default: ${DEFAULT-VALUE}).")
+    String password;
+
+    @Option(names = "--queries",
+            description = "Held-out questions, one per line ('#' starts a comment). Embedded with the bake model. When absent, stored vectors are sampled as queries.")
+    Path queriesFile;
+
+    @Option(names = "--sample-queries", defaultValue = "200",
+            description = "Number of stored vectors sampled as queries when --queries is not given (default: ${DEFAULT-VALUE}).")
+    int sampleQueries;
+
+    @Option(names = "--k", defaultValue = "10", description = "k for recall@k (default: ${DEFAULT-VALUE}).")
+    int k;
+
+    @Option(names = "--target-recall", defaultValue = "0.95", description = "Minimum mean recall@k (default: ${DEFAULT-VALUE}).")
+    double targetRecall;
+
+    @Option(names = "--types", split = ",", defaultValue = "ivfflat,hnsw",
+            description = "Index types to sweep: ivfflat, hnsw (default: ${DEFAULT-VALUE}).")
+    List<String> types;
+
+    @Option(names = "--ivfflat-lists", split = ",", defaultValue = "50,100,200,400",
+            description = "IVFFlat lists to try (default: ${DEFAULT-VALUE}).")
+    List<Integer> ivfLists;
+
+    @Option(names = "--ivfflat-probes", split = ",", defaultValue = "1,2,5,10,20",
+            description = "IVFFlat probes to try (default: ${DEFAULT-VALUE}).")
+    List<Integer> ivfProbes;
+
+    @Option(names = "--hnsw-m", split = ",", defaultValue = "8,16,32",
+            description = "HNSW m to try (default: ${DEFAULT-VALUE}).")
+    List<Integer> hnswM;
+
+    @Option(names = "--hnsw-ef-construction", split = ",", defaultValue = "64,128",
+            description = "HNSW ef_construction to try (default: ${DEFAULT-VALUE}).")
+    List<Integer> hnswEfConstruction;
+
+    @Option(names = "--hnsw-ef-search", split = ",", defaultValue = "20,40,80,160",
+            description = "HNSW ef_search to try (default: ${DEFAULT-VALUE}).")
+    List<Integer> hnswEfSearch;
+
+    @Option(names = "--out", required = true,
+            description = "Write the chosen parameters here (JSON), for bake-image --index-params.")
+    Path out;
+
+    @Override
+    public Integer call() throws Exception {
+        long t0 = System.nanoTime();
+        LOG.infof("[index-tune] started at %s", Instant.now());
+        if ((image == null) == (jdbcUrl == null)) {
+            LOG.error("[index-tune] Exactly one of --image or --jdbc-url is required");
+            return 2;
+        }
+        for (String type : types) {
+            if (!IndexParams.IVFFLAT.equals(type) && !IndexParams.HNSW.equals(type)) {
+                throw new ParameterException(spec.commandLine(),
+                        "Invalid value for option '--types': '" + type + "' (expected " + IndexParams.IVFFLAT + " or " + IndexParams.HNSW + ")");
+            }
+        }
+
+        try (BakedDatabase db = BakedDatabase.open(image, jdbcUrl, username, password);
+             Connection c = db.connect()) {
+            BakedStore store = BakedStore.load(c, false);
+            LOG.infof("[index-tune] Loaded %d vectors, dims=%d%s", store.size(), store.vectors.dim(),
+                    store.projection != null ? " (PCA-projected)" : "");
+
+            List<float[]> queries = new ArrayList<>();
+            List<Integer> excluded = new ArrayList<>();
+            buildQueries(store, queries, excluded);
+
+            // Ground truth from exact search in memory: how many results, and the k-th best similarity
+            List<Truth> truth = new ArrayList<>();
+            for (int i = 0; i < queries.size(); i++) {
+                int[] rows = store.vectors.topK(queries.get(i), k, excluded.get(i));
+                truth.add(new Truth(rows.length,
+                        rows.length == 0 ? Float.POSITIVE_INFINITY : store.vectors.score(queries.get(i), rows[rows.length - 1])));
+            }
+
+            List<String> originalIndexes = vectorIndexes(c, "indexdef");
+            List<Result> results = new ArrayList<>();
+            for (int lists : types.contains(IndexParams.IVFFLAT) ? ivfLists : List.<Integer>of()) {
+                long buildMs = buildIndex(c, IndexParams.ivfflat(lists, 0));
+                for (int probes : ivfProbes) {
+                    if (probes > lists) continue;
+                    results.add(measure(c, IndexParams.ivfflat(lists, probes), buildMs, queries, excluded, truth, store));
+                }
+            }
+            for (int m : types.contains(IndexParams.HNSW) ? hnswM : List.<Integer>of()) {
+                for (int efc : hnswEfConstruction) {
+                    if (efc < 2 * m) continue; // pgvector requires ef_construction >= 2 * m
+                    long buildMs = buildIndex(c, IndexParams.hnsw(m, efc, 0));
+                    for (int efs : hnswEfSearch) {
+                        results.add(measure(c, IndexParams.hnsw(m, efc, efs), buildMs, queries, excluded, truth, store));
+                    }
+                }
+            }
+            // Leave the store as we found it
+            dropVectorIndexes(c);
+            try (Statement st = c.createStatement()) {
+                for (String sql : originalIndexes) st.execute(sql);
+            }
+
+            if (results.isEmpty()) {
+                LOG.error("[index-tune] No configurations to try");
+                return 2;
+            }
+
+            Result chosen = results.stream()
+                    .filter(r -> r.recall >= targetRecall)
+                    .min(Comparator.comparingLong((Result r) -> r.p99Micros)
+                            .thenComparingLong(r -> r.p50Micros)
+                            .thenComparingLong(r -> r.buildMs))
+                    .orElse(null);
+            if (chosen == null) {
+                chosen = results.stream().max(Comparator.comparingDouble(r -> r.recall)).get();
+                LOG.warnf("[index-tune] No configuration reached recall@%d >= %.3f; using the most accurate one", k, targetRecall);
+            }
+
+            chosen.params.write(out);
+            LOG.infof("[index-tune] Chosen: %s recall@%d=%.3f p50=%d us p99=%d us -> %s",
+                    chosen.params.describe(), k, chosen.recall, chosen.p50Micros, chosen.p99Micros, out);
+            return 0;
+        } finally {
+            LOG.infof("[index-tune] Done in %d ms", (System.nanoTime() - t0) / 1_000_000);
+        }
+    }
+
+    private void buildQueries(BakedStore store, List<float[]> queries, List<Integer> excluded) throws Exception {
+        if (queriesFile != null) {
+            List<String> lines = QueryEmbeddingCache.readQueries(queriesFile);
+            EmbeddingModel model = new BgeSmallEnV15QuantizedEmbeddingModel();
+            List<TextSegment> segments = lines.stream().map(TextSegment::from).toList();
+            model.embedAll(segments).content().forEach(e -> {
+                queries.add(store.toStoredSpace(e.vector()));
+                excluded.add(-1);
+            });
+            LOG.infof("[index-tune] Embedded %d held-out queries from %s", queries.size(), queriesFile);
+        } else {
+            int n = Math.min(sampleQueries, store.size());
+            int[] rows = new Random(42).ints(0, store.size()).distinct().limit(n).toArray();
+            for (int row : rows) {
+                queries.add(store.vectors.vector(row));
+                excluded.add(row);
+            }
+            LOG.infof("[index-tune] Sampled %d stored vectors as queries (each excluded from its own results)", n);
+        }
+    }
+
+    private long buildIndex(Connection c, IndexParams params) throws Exception {
+        dropVectorIndexes(c);
+        long t = System.nanoTime();
+        try (Statement st = c.createStatement()) {
+            st.execute("SET maintenance_work_mem = '1GB'");
+            st.execute(params.createIndexSql(BakedStore.TABLE));
+            st.execute("ANALYZE " + BakedStore.TABLE);
+        }
+        long ms = (System.nanoTime() - t) / 1_000_000;
+        LOG.infof("[index-tune] Built %s in %d ms", params.describe(), ms);
+        return ms;
+    }
+
+    private static void dropVectorIndexes(Connection c) throws Exception {
+        List<String> names = vectorIndexes(c, "indexname");
+        try (Statement st = c.createStatement()) {
+            for (String name : names) st.execute("DROP INDEX " + name);
+        }
+    }
+
+    private static List<String> vectorIndexes(Connection c, String column) throws Exception {
+        List<String> values = new ArrayList<>();
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT " + column + " FROM pg_indexes WHERE tablename = '" + BakedStore.TABLE
+                     + "' AND (indexdef ILIKE '%USING ivfflat%' OR indexdef ILIKE '%USING hnsw%')")) {
+            while (rs.next()) values.add(rs.getString(1));
+        }
+        return values;
+    }
+
+    private Result measure(Connection c, IndexParams params, long buildMs, List<float[]> queries,
+            List<Integer> excluded, List<Truth> truth, BakedStore store) throws Exception {
+        try (Statement st = c.createStatement()) {
+            st.execute("RESET ALL");
+            st.execute("SET enable_seqscan = off"); // measure the index, not a sequential scan
+            for (String sql : params.sessionSettings()) st.execute(sql);
+        }
+
+        Map<Integer, String> selfIds = new HashMap<>();
+        for (int i = 0; i < excluded.size(); i++) {
+            if (excluded.get(i) >= 0) selfIds.put(i, store.ids.get(excluded.get(i)));
+        }
+        Map<String, Integer> rowOf = new HashMap<>();
+        for (int row = 0; row < store.ids.size(); row++) rowOf.put(store.ids.get(row), row);
+
+        long[] nanos = new long[queries.size()];
+        double recall = 0;
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT embedding_id FROM " + BakedStore.TABLE + " ORDER BY embedding <=> ?::vector LIMIT ?")) {
+            // Warm up caches so the first configuration is not penalized
+            for (int i = 0; i < Math.min(20, queries.size()); i++) {
+                search(ps, queries.get(i), k + 1);
+            }
+            for (int i = 0; i < queries.size(); i++) {
+                long t = System.nanoTime();
+                List<String> got = search(ps, queries.get(i), k + 1);
+                nanos[i] = System.nanoTime() - t;
+
+                String self = selfIds.get(i);
+                if (self != null) got.remove(self);
+                recall += recall(truth.get(i), queries.get(i), got.subList(0, Math.min(k, got.size())), rowOf, store);
+            }
+        }
+
+        Result r = new Result(params, buildMs, recall / queries.size(),
+                LatencyStats.percentile(nanos, 50) / 1000, LatencyStats.percentile(nanos, 99) / 1000);
+        LOG.infof("[index-tune] %-45s recall@%d=%.3f p50=%d us p99=%d us build=%d ms",
+                params.describe(), k, r.recall, r.p50Micros, r.p99Micros, r.buildMs);
+        return r;
+    }
+
+    private static List<String> search(PreparedStatement ps, float[] query, int limit) throws Exception {
+        ps.setString(1, VectorText.format(query));
+        ps.setInt(2, limit);
+        List<String> ids = new ArrayList<>(limit);
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) ids.add(rs.getString(1));
+        }
+        return ids;
+    }
+
+    /**
+     * Fraction of the exact top-k matched by {@code actual}. A result counts when it is at least as close as the
+     * exact k-th neighbour, so an index returning another row with the same vector (shared include fragments
+     * are stored under several ids) is not penalized.
+     */
+    private static double recall(Truth expected, float[] query, List<String> actual, Map<String, Integer> rowOf,
+            BakedStore store) {
+        if (expected.count() == 0) return 1.0;
+        int hits = 0;
+        for (String id : actual) {
+            Integer row = rowOf.get(id);
+            if (row != null && store.vectors.score(query, row) >= expected.kthScore() - 1e-6f) hits++;
+        }
+        return (double) Math.min(hits, expected.count()) / expected.count();
+    }
+
+    private record Truth(int count, float kthScore) {
+    }
+
+    private record Result(IndexParams params, long buildMs, double recall, long p50Micros, long p99Micros) {
+    }
+}
@@ -0,0 +1,140 @@
+package org.chappie.bot.rag;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.cloud.tools.jib.api.buildplan.AbsoluteUnixPath;
+import com.google.cloud.tools.jib.api.buildplan.FileEntriesLayer;
+
+/**
+ * Lays out the init SQL as several gzip -9 compressed files under {@code /docker-entrypoint-initdb.d},
+ * one image layer per file, so that a release only changes the layers whose content actually changed:
+ * <pre>
+ *   00-schema.sql.gz                   tables and extensions (pg_dump pre-data)
+ *   10-rag-documents-NN.sql.gz         rag_documents rows of docs shard NN, ordered by embedding_id
+ *   20-&lt;table&gt;.sql.gz               auxiliary tables (image info, PCA projection, ...)
+ *   90-indexes.sql.gz                  primary keys and vector indexes (pg_dump post-data)
+ * </pre>
+ * The postgres entrypoint runs the files in name order and decompresses {@code *.sql.gz} itself.
+ * Everything written here is deterministic: no timestamps (gzip mtime is 0, Jib uses a fixed file time)
+ * and rows are ordered by stable ids. The files come either from pg_dump of a bake database or, with
+ * {@code --direct-dump}, straight from {@link DirectDump}.
+ */
+class InitDbLayers {
+
+    static final String INITDB_DIR = "/docker-entrypoint-initdb.d";
+
+    private final Path dir;
+    private final List<String> files = new ArrayList<>();
+
+    InitDbLayers(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Opens a new compressed init file. Files must be written in the order they should run.
+     */
+    Writer open(String name) throws IOException {
+        if (!name.endsWith(".sql.gz")) {
+            throw new IllegalArgumentException("Init file must be *.sql.gz: " + name);
+        }
+        files.add(name);
+        OutputStream out = new GZIPOutputStream(Files.newOutputStream(dir.resolve(name)), 1 << 16) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        };
+        return new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies pg_dump output, dropping the psql restrict/unrestrict meta-command lines that
+     * newer pg_dump releases emit with a random key on every run, then appends {@code trailer}.
+     */
+    void writeFiltered(String name, Path pgDumpOutput, String trailer) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(pgDumpOutput, StandardCharsets.UTF_8);
+             Writer out = open(name)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("\\restrict ") || line.startsWith("\\unrestrict ")) continue;
+                out.write(line);
+                out.write('\n');
+            }
+            out.write(trailer);
+        }
+    }
+
+    /**
+     * Writes an auxiliary table's rows as {@code 20-<table>.sql.gz}. The table itself is created by the schema file.
+     */
+    void writeTable(BakedTable table) throws IOException {
+        try (Writer out = open("20-" + table.name().replace('_', '-') + ".sql.gz")) {
+            out.write(header());
+            out.write(copyHeader(table.name(), table.columns()));
+            table.writeRows(out);
+            out.write(copyTrailer());
+        }
+    }
+
+    /**
+     * The written files, in run order.
+     */
+    List<Path> files() {
+        return files.stream().map(dir::resolve).toList();
+    }
+
+    List<FileEntriesLayer> layers() {
+        List<FileEntriesLayer> layers = new ArrayList<>();
+        for (String name : files) {
+            layers.add(FileEntriesLayer.builder()
+                    .setName("initdb-" + name.substring(0, name.length() - ".sql.gz".length()))
+                    .addEntry(dir.resolve(name), AbsoluteUnixPath.get(INITDB_DIR).resolve(name))
+                    .build());
+        }
+        return layers;
+    }
+
+    long totalBytes() throws IOException {
+        long total = 0;
+        for (String name : files) total += Files.size(dir.resolve(name));
+        return total;
+    }
+
+    static String header() {
+        return "SET client_encoding = 'UTF8';\n"
+                + "SET standard_conforming_strings = on;\n\n";
+    }
+
+    static String copyHeader(String table, List<String> columns) {
+        return "COPY public." + table + " (" + String.join(", ", columns) + ") FROM stdin;\n";
+    }
+
+    static String copyTrailer() {
+        return "\\.\n\n";
+    }
+
+    /**
+     * Docs shard for a guide. Uses String.hashCode, which is specified and therefore stable across runs.
+     */
+    static int shardOf(String repoPath, int shards) {
+        return Math.floorMod(repoPath.hashCode(), shards);
+    }
+
+    /**
+     * Stable row id for the n-th segment of a guide, so unchanged guides produce identical rows.
+     */
+    static String segmentId(String repoPath, int index) {
+        return UUID.nameUUIDFromBytes((repoPath + "#" + index).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+}
@@ -0,0 +1,48 @@
+package org.chappie.bot.rag;
+
+import java.util.Arrays;
+
+/**
+ * Records latencies in a fixed-size ring (the most recent samples win) and reports percentiles
+ * and throughput since creation.
+ */
+class LatencyStats {
+
+    private final long[] ring;
+    private final long startNanos = System.nanoTime();
+    private long count;
+
+    LatencyStats(int capacity) {
+        this.ring = new long[capacity];
+    }
+
+    synchronized void record(long nanos) {
+        ring[(int) (count % ring.length)] = nanos;
+        count++;
+    }
+
+    synchronized long count() {
+        return count;
+    }
+
+    /**
+     * Percentile over the retained samples, in microseconds.
+     */
+    synchronized long percentileMicros(int pct) {
+        int n = (int) Math.min(count, ring.length);
+        return percentile(Arrays.copyOf(ring, n), pct) / 1000;
+    }
+
+    double throughputPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds == 0 ? 0 : count() / seconds;
+    }
+
+    static long percentile(long[] values, int pct) {
+        if (values.length == 0) return 0;
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int idx = (int) Math.ceil(pct / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, idx))];
+    }
+}
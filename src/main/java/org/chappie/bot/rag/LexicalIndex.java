@@ -0,0 +1,183 @@
+package org.chappie.bot.rag;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+/**
+ * Lexical index over chunk text and section paths, baked as the {@value #TABLE} table: one
+ * {@code tsvector} per chunk with a GIN index, so queries naming exact identifiers can narrow the
+ * candidates before ranking them by vector distance.
+ *
+ * Lexemes are computed here rather than by a Postgres text search configuration, because the built-in
+ * parsers break identifiers apart. {@code quarkus.http.root-path} yields {@code quarkus.http.root-path},
+ * {@code http.root-path}, {@code root-path}, {@code quarkus}, {@code http}, {@code root} and {@code path};
+ * {@code @ConfigProperty} yields {@code configproperty}, {@code config} and {@code property}. Title and
+ * section path terms get weight A.
+ * Queries must be tokenized with {@link #tsquery(String)} so both sides agree.
+ */
+class LexicalIndex implements BakedTable {
+
+    static final String TABLE = "rag_lexical";
+
+    private static final Pattern TOKEN = Pattern.compile("@?[A-Za-z_][A-Za-z0-9_]*(?:[.-][A-Za-z0-9_]+)*");
+    private static final Pattern CAMEL = Pattern.compile("(?<=[a-z0-9])(?=[A-Z])|(?<=[A-Z])(?=[A-Z][a-z])");
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "can", "do", "for", "from", "how", "i", "if", "in", "is",
+            "it", "my", "of", "on", "or", "that", "the", "this", "to", "use", "what", "when", "with", "you", "your");
+    private static final int MAX_LEXEME = 200;
+
+    private final SegmentSpool rows;
+
+    LexicalIndex(SegmentSpool rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * Identifier-aware terms of a text, in order of first occurrence, lower case, stop words removed.
+     */
+    static List<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        Matcher m = TOKEN.matcher(text);
+        while (m.find()) {
+            String token = m.group().startsWith("@") ? m.group().substring(1) : m.group();
+            addIdentifier(token, terms);
+        }
+        return new ArrayList<>(terms);
+    }
+
+    private static void addIdentifier(String token, Set<String> terms) {
+        add(token, terms);
+        // Suffixes cut at each separator but the last (the last part is added below), keeping the original
+        // separators, so "http.port" finds "quarkus.http.port" and "root-path" finds "quarkus.http.root-path"
+        int last = Math.max(token.lastIndexOf('.'), token.lastIndexOf('-'));
+        for (int i = 0; i < last; i++) {
+            char c = token.charAt(i);
+            if (c == '.' || c == '-') add(token.substring(i + 1), terms);
+        }
+        for (String part : token.split("[.-]")) {
+            add(part, terms);
+            String[] words = CAMEL.split(part);
+            if (words.length > 1) {
+                for (String word : words) add(word, terms);
+            }
+        }
+    }
+
+    private static void add(String term, Set<String> terms) {
+        String t = term.toLowerCase(Locale.ROOT);
+        if (t.length() < 2 || t.length() > MAX_LEXEME || STOP_WORDS.contains(t)) return;
+        terms.add(t);
+    }
+
+    /**
+     * Config and API identifiers in a question, lower case: see {@link #isIdentifier(String)}.
+     */
+    static List<String> identifiers(String query) {
+        List<String> identifiers = new ArrayList<>();
+        Matcher m = TOKEN.matcher(query);
+        while (m.find()) {
+            String token = m.group();
+            if (isIdentifier(token)) {
+                String t = (token.startsWith("@") ? token.substring(1) : token).toLowerCase(Locale.ROOT);
+                if (t.length() >= 2 && t.length() <= MAX_LEXEME && !identifiers.contains(t)) identifiers.add(t);
+            }
+        }
+        return identifiers;
+    }
+
+    /**
+     * Dotted names with at least two alphabetic segments ({@code quarkus.http.port}, {@code Uni.createFrom}),
+     * {@code @Annotations}, snake_case, lowerCamelCase and {@code quarkus-*} artifacts, none with a
+     * single-character segment. Product names ({@code OpenShift}), abbreviations ({@code e.g}) and
+     * hyphenated prose ({@code non-blocking}) are ordinary terms.
+     */
+    private static boolean isIdentifier(String token) {
+        if (token.startsWith("@")) return token.length() > 2;
+        int alphabetic = 0;
+        for (String part : token.split("[._-]", -1)) {
+            if (part.length() < 2) return false;
+            if (part.chars().anyMatch(Character::isLetter)) alphabetic++;
+        }
+        if (token.indexOf('.') > 0) return alphabetic >= 2;
+        if (token.startsWith("quarkus-") || token.indexOf('_') >= 0) return true;
+        return token.indexOf('-') < 0 && Character.isLowerCase(token.charAt(0)) && CAMEL.split(token).length > 1;
+    }
+
+    /**
+     * A tsquery for a question, or null if it has no usable terms. {@link #identifiers(String)} must
+     * all match; without identifiers any term may match.
+     */
+    static String tsquery(String query) {
+        List<String> identifiers = identifiers(query);
+        if (!identifiers.isEmpty()) {
+            return String.join(" & ", identifiers.stream().map(LexicalIndex::quote).toList());
+        }
+        List<String> terms = terms(query);
+        return terms.isEmpty() ? null : String.join(" | ", terms.stream().map(LexicalIndex::quote).toList());
+    }
+
+    /**
+     * tsvector literal: heading terms as {@code 'term':1A}, body terms without position.
+     */
+    static String tsvector(TextSegment segment) {
+        TreeMap<String, Boolean> lexemes = new TreeMap<>();
+        Metadata meta = segment.metadata();
+        for (String key : List.of("title", "section_path", "section_title")) {
+            String value = meta.getString(key);
+            if (value != null) {
+                for (String t : terms(value)) lexemes.put(t, true);
+            }
+        }
+        for (String t : terms(segment.text())) lexemes.putIfAbsent(t, false);
+
+        StringBuilder sb = new StringBuilder();
+        lexemes.forEach((term, heading) -> {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(quote(term));
+            if (heading) sb.append(":1A");
+        });
+        return sb.toString();
+    }
+
+    private static String quote(String term) {
+        return "'" + term.replace("\\", "\\\\").replace("'", "''") + "'";
+    }
+
+    @Override
+    public String name() {
+        return TABLE;
+    }
+
+    @Override
+    public String createSql() {
+        return "CREATE TABLE " + TABLE + " ("
+                + "embedding_id UUID PRIMARY KEY, "
+                + "terms TSVECTOR NOT NULL)";
+    }
+
+    @Override
+    public List<String> columns() {
+        return List.of("embedding_id", "terms");
+    }
+
+    @Override
+    public List<String> indexSql() {
+        return List.of("CREATE INDEX " + TABLE + "_terms_index ON " + TABLE + " USING gin (terms)");
+    }
+
+    @Override
+    public void writeRows(Writer out) throws IOException {
+        rows.forEach(row -> out.write(CopyText.row(row.id(), CopyText.field(tsvector(row.segment())))));
+    }
+}
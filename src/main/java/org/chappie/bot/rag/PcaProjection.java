@@ -0,0 +1,255 @@
+package org.chappie.bot.rag;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import dev.langchain4j.data.embedding.Embedding;
+
+/**
+ * PCA projection fitted on the corpus embeddings, used to store reduced-dimension vectors.
+ *
+ * The projection is shipped in the image in the {@value #TABLE} table so that a consumer can project
+ * query embeddings the same way before searching:
+ * <pre>
+ *   kind='mean',      component=0      -> mean vector (original dimension)
+ *   kind='component', component=0..k-1 -> principal axes, highest variance first
+ * </pre>
+ * A query is projected as {@code normalize(W * (q - mean))}.
+ */
+class PcaProjection implements BakedTable {
+
+    static final String TABLE = "rag_pca_projection";
+
+    private final float[] mean;
+    private final float[][] components;
+    private final double[] variances;
+    private final double totalVariance;
+
+    private PcaProjection(float[] mean, float[][] components, double[] variances, double totalVariance) {
+        this.mean = mean;
+        this.components = components;
+        this.variances = variances;
+        this.totalVariance = totalVariance;
+    }
+
+    /**
+     * Fits the full basis (all principal axes, sorted by explained variance). Use {@link #truncate(int)}
+     * to get the projection for a given target dimension.
+     */
+    static PcaProjection fit(List<Embedding> embeddings) {
+        if (embeddings.isEmpty()) {
+            throw new IllegalArgumentException("Cannot fit PCA on an empty corpus");
+        }
+        int d = embeddings.get(0).dimension();
+        int n = embeddings.size();
+
+        double[] mean = new double[d];
+        for (Embedding e : embeddings) {
+            float[] v = e.vector();
+            for (int j = 0; j < d; j++) mean[j] += v[j];
+        }
+        for (int j = 0; j < d; j++) mean[j] /= n;
+
+        // Upper triangle of the covariance matrix, mirrored afterwards
+        double[][] cov = new double[d][d];
+        double[] x = new double[d];
+        for (Embedding e : embeddings) {
+            float[] v = e.vector();
+            for (int j = 0; j < d; j++) x[j] = v[j] - mean[j];
+            for (int a = 0; a < d; a++) {
+                double xa = x[a];
+                double[] row = cov[a];
+                for (int b = a; b < d; b++) row[b] += xa * x[b];
+            }
+        }
+        double denom = Math.max(1, n - 1);
+        for (int a = 0; a < d; a++) {
+            for (int b = a; b < d; b++) {
+                cov[a][b] /= denom;
+                cov[b][a] = cov[a][b];
+            }
+        }
+
+        double[][] vectors = new double[d][d];
+        double[] values = jacobiEigen(cov, vectors);
+
+        Integer[] order = new Integer[d];
+        for (int i = 0; i < d; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingDouble((Integer i) -> values[i]).reversed());
+
+        float[][] components = new float[d][d];
+        double[] variances = new double[d];
+        double total = 0;
+        for (int c = 0; c < d; c++) {
+            int col = order[c];
+            variances[c] = Math.max(0, values[col]);
+            total += variances[c];
+            for (int j = 0; j < d; j++) components[c][j] = (float) vectors[j][col];
+        }
+
+        float[] meanF = new float[d];
+        for (int j = 0; j < d; j++) meanF[j] = (float) mean[j];
+        return new PcaProjection(meanF, components, variances, total);
+    }
+
+    /**
+     * Keeps the first {@code k} principal axes.
+     */
+    PcaProjection truncate(int k) {
+        if (k <= 0 || k > components.length) {
+            throw new IllegalArgumentException("Target dimension must be between 1 and " + components.length + ", got " + k);
+        }
+        return new PcaProjection(mean, Arrays.copyOf(components, k), Arrays.copyOf(variances, k), totalVariance);
+    }
+
+    /**
+     * Fraction of the corpus variance kept by this projection.
+     */
+    double explainedVariance() {
+        double kept = 0;
+        for (double v : variances) kept += v;
+        return totalVariance == 0 ? 1.0 : kept / totalVariance;
+    }
+
+    float[] project(float[] v) {
+        if (v.length != mean.length) {
+            throw new IllegalArgumentException("Expected dimension " + mean.length + ", got " + v.length);
+        }
+        float[] out = new float[components.length];
+        for (int c = 0; c < components.length; c++) {
+            float[] w = components[c];
+            double s = 0;
+            for (int j = 0; j < v.length; j++) s += w[j] * (v[j] - mean[j]);
+            out[c] = (float) s;
+        }
+        return FlatVectorIndex.normalize(out);
+    }
+
+    List<Embedding> projectAll(List<Embedding> embeddings) {
+        List<Embedding> out = new ArrayList<>(embeddings.size());
+        for (Embedding e : embeddings) out.add(Embedding.from(project(e.vector())));
+        return out;
+    }
+
+    @Override
+    public String name() {
+        return TABLE;
+    }
+
+    @Override
+    public String createSql() {
+        return "CREATE TABLE " + TABLE + " ("
+                + "kind TEXT NOT NULL, "
+                + "component INTEGER NOT NULL, "
+                + "vector REAL[] NOT NULL, "
+                + "PRIMARY KEY (kind, component))";
+    }
+
+    @Override
+    public List<String> columns() {
+        return List.of("kind", "component", "vector");
+    }
+
+    @Override
+    public void writeRows(Writer out) throws IOException {
+        for (int i = 0; i < components.length; i++) {
+            out.write(CopyText.row("component", String.valueOf(i), CopyText.array(components[i])));
+        }
+        out.write(CopyText.row("mean", "0", CopyText.array(mean)));
+    }
+
+    /**
+     * Loads the projection shipped in a baked database, or returns null if the image was baked without PCA.
+     */
+    static PcaProjection load(Connection c) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            try (ResultSet rs = st.executeQuery("SELECT to_regclass('" + TABLE + "') IS NOT NULL")) {
+                if (!rs.next() || !rs.getBoolean(1)) return null;
+            }
+            float[] mean = null;
+            List<float[]> components = new ArrayList<>();
+            try (ResultSet rs = st.executeQuery(
+                    "SELECT kind, vector FROM " + TABLE + " ORDER BY kind, component")) {
+                while (rs.next()) {
+                    float[] v = toFloats(rs.getArray(2));
+                    if ("mean".equals(rs.getString(1))) {
+                        mean = v;
+                    } else {
+                        components.add(v);
+                    }
+                }
+            }
+            if (mean == null || components.isEmpty()) return null;
+            return new PcaProjection(mean, components.toArray(new float[0][]), new double[components.size()], 0);
+        }
+    }
+
+    private static float[] toFloats(Array array) throws SQLException {
+        Object[] values = (Object[]) array.getArray();
+        float[] out = new float[values.length];
+        for (int i = 0; i < values.length; i++) out[i] = ((Number) values[i]).floatValue();
+        return out;
+    }
+
+    /**
+     * Cyclic Jacobi eigen decomposition of a symmetric matrix. {@code a} is destroyed; eigenvectors are
+     * written as columns of {@code v}. Returns the eigenvalues.
+     */
+    private static double[] jacobiEigen(double[][] a, double[][] v) {
+        int n = a.length;
+        for (int i = 0; i < n; i++) {
+            Arrays.fill(v[i], 0);
+            v[i][i] = 1;
+        }
+        for (int sweep = 0; sweep < 100; sweep++) {
+            double off = 0;
+            for (int p = 0; p < n; p++) {
+                for (int q = p + 1; q < n; q++) off += a[p][q] * a[p][q];
+            }
+            if (off < 1e-22) break;
+
+            for (int p = 0; p < n; p++) {
+                for (int q = p + 1; q < n; q++) {
+                    double apq = a[p][q];
+                    if (Math.abs(apq) < 1e-30) continue;
+                    double theta = (a[q][q] - a[p][p]) / (2 * apq);
+                    double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+                    if (theta == 0) t = 1;
+                    double cos = 1 / Math.sqrt(t * t + 1);
+                    double sin = t * cos;
+
+                    for (int k = 0; k < n; k++) {
+                        double akp = a[k][p];
+                        double akq = a[k][q];
+                        a[k][p] = cos * akp - sin * akq;
+                        a[k][q] = sin * akp + cos * akq;
+                    }
+                    for (int k = 0; k < n; k++) {
+                        double apk = a[p][k];
+                        double aqk = a[q][k];
+                        a[p][k] = cos * apk - sin * aqk;
+                        a[q][k] = sin * apk + cos * aqk;
+                    }
+                    for (int k = 0; k < n; k++) {
+                        double vkp = v[k][p];
+                        double vkq = v[k][q];
+                        v[k][p] = cos * vkp - sin * vkq;
+                        v[k][q] = sin * vkp + cos * vkq;
+                    }
+                }
+            }
+        }
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) values[i] = a[i][i];
+        return values;
+    }
+}
@@ -0,0 +1,143 @@
+package org.chappie.bot.rag;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Precomputed query embeddings (and optionally top-k chunk ids) baked into the image in the
+ * {@value #TABLE} table, keyed by {@link #hash(String)} of the normalized question. A serving side
+ * that finds a hit can skip model inference, and with top_chunk_ids also the vector search.
+ * Embeddings are in the stored space, i.e. already PCA-projected when the image uses PCA.
+ */
+class QueryEmbeddingCache implements BakedTable {
+
+    static final String TABLE = "query_embedding_cache";
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern TRAILING_PUNCTUATION = Pattern.compile("[\\s?!.]+$");
+
+    record Entry(float[] embedding, String[] topChunkIds) {
+    }
+
+    private final int dimension;
+    private final List<String> queries;
+    private final List<float[]> embeddings;
+    private final List<String[]> topChunkIds;
+
+    /**
+     * @param embeddings  per query, its embedding in the stored space
+     * @param topChunkIds per query, the ids of the nearest chunks best first, or null to leave empty
+     */
+    QueryEmbeddingCache(int dimension, List<String> queries, List<float[]> embeddings, List<String[]> topChunkIds) {
+        this.dimension = dimension;
+        this.queries = queries;
+        this.embeddings = embeddings;
+        this.topChunkIds = topChunkIds;
+    }
+
+    /**
+     * Case, Unicode form, whitespace and trailing punctuation do not change the key.
+     */
+    static String normalize(String query) {
+        String s = Normalizer.normalize(query, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        s = WHITESPACE.matcher(s.trim()).replaceAll(" ");
+        return TRAILING_PUNCTUATION.matcher(s).replaceAll("");
+    }
+
+    static String hash(String query) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha.digest(normalize(query).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads a query list: one question per line, blank lines and lines starting with '#' ignored.
+     * Questions that normalize to the same key are kept once.
+     */
+    static List<String> readQueries(Path file) throws IOException {
+        Map<String, String> byHash = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String q = line.trim();
+            if (q.isEmpty() || q.startsWith("#")) continue;
+            byHash.putIfAbsent(hash(q), q);
+        }
+        return List.copyOf(byHash.values());
+    }
+
+    @Override
+    public String name() {
+        return TABLE;
+    }
+
+    @Override
+    public String createSql() {
+        return "CREATE TABLE " + TABLE + " ("
+                + "query_hash TEXT PRIMARY KEY, "
+                + "query TEXT NOT NULL, "
+                + "embedding vector(" + dimension + ") NOT NULL, "
+                + "top_chunk_ids UUID[] NULL)";
+    }
+
+    @Override
+    public List<String> columns() {
+        return List.of("query_hash", "query", "embedding", "top_chunk_ids");
+    }
+
+    @Override
+    public void writeRows(Writer out) throws IOException {
+        Map<String, Integer> byHash = new TreeMap<>();
+        for (int i = 0; i < queries.size(); i++) byHash.put(hash(queries.get(i)), i);
+        for (Map.Entry<String, Integer> e : byHash.entrySet()) {
+            int i = e.getValue();
+            out.write(CopyText.row(
+                    e.getKey(),
+                    CopyText.field(queries.get(i)),
+                    VectorText.format(embeddings.get(i)),
+                    CopyText.array(topChunkIds == null ? null : topChunkIds.get(i))));
+        }
+    }
+
+    /**
+     * Loads the cache from a baked database; empty if the image was baked without one.
+     */
+    static Map<String, Entry> load(Connection c) throws SQLException {
+        Map<String, Entry> entries = new HashMap<>();
+        try (Statement st = c.createStatement()) {
+            try (ResultSet rs = st.executeQuery("SELECT to_regclass('" + TABLE + "') IS NOT NULL")) {
+                if (!rs.next() || !rs.getBoolean(1)) return entries;
+            }
+            try (ResultSet rs = st.executeQuery(
+                    "SELECT query_hash, embedding::text, top_chunk_ids::text[] FROM " + TABLE)) {
+                while (rs.next()) {
+                    Array ids = rs.getArray(3);
+                    entries.put(rs.getString(1), new Entry(
+                            VectorText.parse(rs.getString(2)),
+                            ids == null ? null : (String[]) ids.getArray()));
+                }
+            }
+        }
+        return entries;
+    }
+}
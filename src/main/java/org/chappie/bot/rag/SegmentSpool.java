@@ -0,0 +1,196 @@
+package org.chappie.bot.rag;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+
+/**
+ * A variant's rag_documents rows, spooled to one file per docs shard while the guides are embedded, so the
+ * bake holds one guide at a time instead of the whole corpus. Each line is a row in COPY text format
+ * (id, full-dimension vector, text, JSON metadata). Reading a shard back sorts it by id; only the ids and
+ * file offsets of that shard are kept in memory for this.
+ */
+class SegmentSpool implements Closeable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Path dir;
+    private final OutputStream[] shards;
+    private long size;
+    private PcaProjection projection;
+
+    SegmentSpool(Path dir, int shards) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.shards = new OutputStream[shards];
+        for (int s = 0; s < shards; s++) {
+            this.shards[s] = new BufferedOutputStream(Files.newOutputStream(file(s)), 1 << 16);
+        }
+    }
+
+    void add(String repoPath, String id, Embedding embedding, TextSegment segment) throws IOException {
+        String line = CopyText.row(
+                id,
+                VectorText.format(embedding.vector()),
+                CopyText.field(segment.text()),
+                CopyText.field(MAPPER.writeValueAsString(segment.metadata().toMap())));
+        shards[InitDbLayers.shardOf(repoPath, shards.length)].write(line.getBytes(StandardCharsets.UTF_8));
+        size++;
+    }
+
+    long size() {
+        return size;
+    }
+
+    int shards() {
+        return shards.length;
+    }
+
+    /**
+     * Rows read back from now on carry vectors projected into the stored space.
+     */
+    void project(PcaProjection projection) {
+        this.projection = projection;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (OutputStream out : shards) out.close();
+    }
+
+    interface RowConsumer {
+        void accept(Row row) throws IOException;
+    }
+
+    /**
+     * All rows, shard by shard, each shard ordered by id.
+     */
+    void forEach(RowConsumer consumer) throws IOException {
+        for (int s = 0; s < shards.length; s++) forEach(s, consumer);
+    }
+
+    /**
+     * The rows of one shard, ordered by id (the same order as uuid comparison in Postgres).
+     */
+    void forEach(int shard, RowConsumer consumer) throws IOException {
+        Path file = file(shard);
+        int rows = 0;
+        long[] offsets = new long[1024];
+        long[] msb = new long[1024];
+        long[] lsb = new long[1024];
+        try (InputStream in = Files.newInputStream(file);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16)) {
+            long offset = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (rows == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, rows * 2);
+                    msb = Arrays.copyOf(msb, rows * 2);
+                    lsb = Arrays.copyOf(lsb, rows * 2);
+                }
+                UUID id = UUID.fromString(line.substring(0, line.indexOf('\t')));
+                offsets[rows] = offset;
+                msb[rows] = id.getMostSignificantBits();
+                lsb[rows] = id.getLeastSignificantBits();
+                rows++;
+                offset += line.getBytes(StandardCharsets.UTF_8).length + 1;
+            }
+        }
+
+        long[] m = msb;
+        long[] l = lsb;
+        Integer[] order = new Integer[rows];
+        for (int i = 0; i < rows; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> {
+            int c = Long.compareUnsigned(m[a], m[b]);
+            return c != 0 ? c : Long.compareUnsigned(l[a], l[b]);
+        });
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long end = channel.size();
+            for (int i : order) {
+                long from = offsets[i];
+                long to = i + 1 < rows ? offsets[i + 1] : end;
+                ByteBuffer buf = ByteBuffer.allocate((int) (to - from - 1));
+                while (buf.hasRemaining()) {
+                    if (channel.read(buf, from + buf.position()) < 0) throw new IOException("Truncated spool file " + file);
+                }
+                consumer.accept(new Row(new String(buf.array(), StandardCharsets.UTF_8).split("\t", -1), projection));
+            }
+        }
+    }
+
+    private Path file(int shard) {
+        return dir.resolve(String.format("shard-%02d.rows", shard));
+    }
+
+    /**
+     * One spooled row. Text and metadata stay COPY-encoded until asked for.
+     */
+    static final class Row {
+
+        private final String[] fields;
+        private final PcaProjection projection;
+
+        private Row(String[] fields, PcaProjection projection) {
+            if (fields.length != 4) {
+                throw new IllegalStateException("Corrupt spool row with " + fields.length + " fields");
+            }
+            this.fields = fields;
+            this.projection = projection;
+        }
+
+        String id() {
+            return fields[0];
+        }
+
+        float[] vector() {
+            float[] v = VectorText.parse(fields[1]);
+            return projection != null ? projection.project(v) : v;
+        }
+
+        String text() {
+            return CopyText.decode(fields[2]);
+        }
+
+        Map<String, Object> metadata() {
+            try {
+                return MAPPER.readValue(CopyText.decode(fields[3]), new TypeReference<Map<String, Object>>() {});
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Corrupt spool metadata for " + id(), e);
+            }
+        }
+
+        TextSegment segment() {
+            return TextSegment.from(text(), new Metadata(metadata()));
+        }
+
+        /**
+         * The row in COPY text format for rag_documents (embedding_id, embedding, text, metadata).
+         */
+        String line() {
+            String vector = projection != null ? VectorText.format(vector()) : fields[1];
+            return CopyText.row(fields[0], vector, fields[2], fields[3]);
+        }
+    }
+}
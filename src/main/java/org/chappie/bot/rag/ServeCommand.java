@@ -0,0 +1,341 @@
+package org.chappie.bot.rag;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+@Command(
+    name = "serve",
+    mixinStandardHelpOptions = true,
+    description = "Load a baked store into memory and serve top-k chunk retrieval over HTTP."
+)
+public class ServeCommand implements Callable<Integer> {
+
+    private static final Logger LOG = Logger.getLogger(ServeCommand.class);
+
+    @Option(names = "--image",
+            description = "Baked image to start with Testcontainers and load from (e.g. ghcr.io/quarkusio/chappie-ingestion-quarkus:3.26.3).")
+    String image;
+
+    @Option(names = "--jdbc-url",
+            description = "Load from an already running baked database instead of --image.")
+    String jdbcUrl;
+
+    @Option(names = "--username", defaultValue = "postgres", description = "Database user for --jdbc-url (default: ${DEFAULT-VALUE}).")
+    String username;
+
+    @Option(names = "--password", defaultValue = "postgres", description = "Database password for --jdbc-url (default: ${DEFAULT-VALUE}).")
+    String password;
+
+    @Option(names = "--port", defaultValue = "8090", description = "HTTP port (default: ${DEFAULT-VALUE}).")
+    int port;
+
+    @Option(names = "--top-k", defaultValue = "5", description = "Default number of chunks returned (default: ${DEFAULT-VALUE}).")
+    int defaultTopK;
+
+    @Option(names = "--batch-max", defaultValue = "32", description = "Maximum query embeddings per model call (default: ${DEFAULT-VALUE}).")
+    int batchMax;
+
+    @Option(names = "--batch-wait-ms", defaultValue = "0",
+            description = "How long to hold a partial embedding batch open for more requests (default: ${DEFAULT-VALUE}).")
+    long batchWaitMs;
+
+    @Option(names = "--load-test-requests", defaultValue = "0",
+            description = "After startup, fire this many requests at the local endpoint and report p50/p99 and throughput (0 = off).")
+    int loadTestRequests;
+
+    @Option(names = "--load-test-concurrency", defaultValue = "32", description = "Concurrent clients for the load test (default: ${DEFAULT-VALUE}).")
+    int loadTestConcurrency;
+
+    @Option(names = "--load-test-queries",
+            description = "Questions for the load test, one per line. Default: snippets of stored chunks.")
+    Path loadTestQueries;
+
+    @Option(names = "--exit-after-load-test", description = "Stop after the load test instead of continuing to serve.")
+    boolean exitAfterLoadTest;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final LatencyStats latencies = new LatencyStats(100_000);
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    private BakedStore store;
+    private Map<String, QueryEmbeddingCache.Entry> queryCache;
+    private Map<String, String> imageInfo;
+    private Map<String, Integer> rowById;
+    private EmbeddingBatcher batcher;
+    private long startupMs;
+
+    @Override
+    public Integer call() throws Exception {
+        long t0 = System.nanoTime();
+        LOG.infof("[serve] started at %s", Instant.now());
+
+        try (BakedDatabase db = BakedDatabase.open(image, jdbcUrl, username, password)) {
+            try (Connection c = db.connect()) {
+                store = BakedStore.load(c, true);
+                queryCache = QueryEmbeddingCache.load(c);
+                imageInfo = ImageInfo.load(c);
+            }
+        }
+        rowById = new HashMap<>(store.size() * 2);
+        for (int i = 0; i < store.size(); i++) rowById.put(store.ids.get(i), i);
+        LOG.infof("[serve] Loaded %d chunks (dims=%d%s), %d cached queries, image %s", store.size(), store.vectors.dim(),
+                store.projection != null ? ", PCA-projected" : "", queryCache.size(), imageInfo);
+
+        EmbeddingModel model = new BgeSmallEnV15QuantizedEmbeddingModel();
+        model.embed("warm up"); // load the ONNX session before the first request
+        batcher = new EmbeddingBatcher(model, batchMax, batchWaitMs);
+
+        ExecutorService handlers = requestExecutor();
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 1024);
+        server.createContext("/retrieve", this::handleRetrieve);
+        server.createContext("/stats", this::handleStats);
+        server.createContext("/health", ex -> respond(ex, 200, mapper.createObjectNode().put("status", "UP")));
+        server.setExecutor(handlers);
+        server.start();
+
+        startupMs = (System.nanoTime() - t0) / 1_000_000;
+        LOG.infof("[serve] Listening on http://localhost:%d/retrieve?q=... (startup %d ms)", port, startupMs);
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            stopped.countDown();
+        }));
+
+        try {
+            if (loadTestRequests > 0) {
+                runLoadTest();
+                if (exitAfterLoadTest) return 0;
+            }
+            stopped.await();
+            return 0;
+        } finally {
+            server.stop(0);
+            batcher.close();
+            handlers.shutdownNow();
+        }
+    }
+
+    /**
+     * One virtual thread per request: handlers mostly wait on the embedding batcher.
+     */
+    private static ExecutorService requestExecutor() {
+        LOG.info("[serve] Handling requests on virtual threads");
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    private void handleRetrieve(HttpExchange ex) throws IOException {
+        long t = System.nanoTime();
+        try {
+            String query;
+            int k = defaultTopK;
+            if ("POST".equalsIgnoreCase(ex.getRequestMethod())) {
+                JsonNode body;
+                try (InputStream in = ex.getRequestBody()) {
+                    body = mapper.readTree(in);
+                } catch (JsonProcessingException e) {
+                    badRequest(ex, "request body is not valid JSON");
+                    return;
+                }
+                if (body == null || !body.isObject()) {
+                    badRequest(ex, "request body must be a JSON object with 'query' and optional 'k'");
+                    return;
+                }
+                query = body.path("query").asText(null);
+                JsonNode kNode = body.get("k");
+                if (kNode != null && !kNode.isNull()) {
+                    if (!kNode.canConvertToInt() || !kNode.isIntegralNumber()) {
+                        badRequest(ex, "'k' must be an integer");
+                        return;
+                    }
+                    k = kNode.intValue();
+                }
+            } else {
+                Map<String, String> params = queryParams(ex.getRequestURI());
+                query = params.get("q");
+                if (params.containsKey("k")) {
+                    try {
+                        k = Integer.parseInt(params.get("k").trim());
+                    } catch (NumberFormatException e) {
+                        badRequest(ex, "'k' must be an integer");
+                        return;
+                    }
+                }
+            }
+            if (query == null || query.isBlank()) {
+                badRequest(ex, "missing query ('q' parameter or JSON 'query')");
+                return;
+            }
+            respond(ex, 200, retrieve(query, Math.max(1, Math.min(k, 100))));
+            latencies.record(System.nanoTime() - t);
+        } catch (Exception e) {
+            LOG.warn("[serve] request failed", e);
+            respond(ex, 500, mapper.createObjectNode().put("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    private ObjectNode retrieve(String query, int k) throws Exception {
+        QueryEmbeddingCache.Entry cached = queryCache.get(QueryEmbeddingCache.hash(query));
+        float[] q;
+        int[] rows = null;
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            q = cached.embedding();
+            if (cached.topChunkIds() != null && cached.topChunkIds().length >= k) {
+                rows = new int[k];
+                for (int i = 0; i < k; i++) {
+                    Integer row = rowById.get(cached.topChunkIds()[i]);
+                    if (row == null) {
+                        rows = null;
+                        break;
+                    }
+                    rows[i] = row;
+                }
+            }
+        } else {
+            q = store.toStoredSpace(batcher.embed(query).get(30, TimeUnit.SECONDS));
+        }
+        if (rows == null) {
+            rows = store.vectors.topK(q, k, -1);
+        }
+
+        ObjectNode out = mapper.createObjectNode();
+        out.put("query", query);
+        out.put("cached", cached != null);
+        ArrayNode results = out.putArray("results");
+        for (int row : rows) {
+            ObjectNode r = results.addObject();
+            r.put("id", store.ids.get(row));
+            r.put("score", store.vectors.score(q, row));
+            r.put("text", store.texts.get(row));
+            String meta = store.metadata.get(row);
+            r.set("metadata", meta == null ? mapper.nullNode() : mapper.readTree(meta));
+        }
+        return out;
+    }
+
+    private void handleStats(HttpExchange ex) throws IOException {
+        ObjectNode stats = mapper.createObjectNode();
+        stats.set("image", mapper.valueToTree(imageInfo));
+        stats.put("chunks", store.size());
+        stats.put("startup_ms", startupMs);
+        stats.put("requests", latencies.count());
+        stats.put("cache_hits", cacheHits.get());
+        stats.put("p50_us", latencies.percentileMicros(50));
+        stats.put("p99_us", latencies.percentileMicros(99));
+        stats.put("throughput_rps", latencies.throughputPerSecond());
+        stats.put("mean_embedding_batch", batcher.meanBatchSize());
+        respond(ex, 200, stats);
+    }
+
+    private void runLoadTest() throws Exception {
+        List<String> queries = new ArrayList<>();
+        if (loadTestQueries != null) {
+            queries.addAll(QueryEmbeddingCache.readQueries(loadTestQueries));
+        }
+        if (queries.isEmpty()) {
+            Random r = new Random(42);
+            for (int i = 0; i < 500; i++) {
+                String text = store.texts.get(r.nextInt(store.size()));
+                if (text != null && !text.isBlank()) queries.add(text.substring(0, Math.min(120, text.length())));
+            }
+        }
+        LOG.infof("[serve] Load test: %d requests, %d concurrent clients, %d distinct queries",
+                loadTestRequests, loadTestConcurrency, queries.size());
+
+        HttpClient client = HttpClient.newHttpClient();
+        ExecutorService clients = Executors.newFixedThreadPool(loadTestConcurrency);
+        long[] nanos = new long[loadTestRequests];
+        AtomicLong next = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+        long t0 = System.nanoTime();
+        for (int c = 0; c < loadTestConcurrency; c++) {
+            clients.submit(() -> {
+                int i;
+                while ((i = (int) next.getAndIncrement()) < loadTestRequests) {
+                    String q = URLEncoder.encode(queries.get(i % queries.size()), StandardCharsets.UTF_8);
+                    HttpRequest req = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/retrieve?q=" + q)).build();
+                    long t = System.nanoTime();
+                    try {
+                        HttpResponse<Void> resp = client.send(req, HttpResponse.BodyHandlers.discarding());
+                        if (resp.statusCode() != 200) failures.incrementAndGet();
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    }
+                    nanos[i] = System.nanoTime() - t;
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.HOURS);
+        double seconds = (System.nanoTime() - t0) / 1e9;
+
+        LOG.infof("[serve] Load test: startup=%d ms p50=%d us p99=%d us throughput=%.1f req/s failures=%d mean batch=%.1f",
+                startupMs, LatencyStats.percentile(nanos, 50) / 1000, LatencyStats.percentile(nanos, 99) / 1000,
+                loadTestRequests / seconds, failures.get(), batcher.meanBatchSize());
+    }
+
+    private void badRequest(HttpExchange ex, String message) throws IOException {
+        respond(ex, 400, mapper.createObjectNode().put("error", message));
+    }
+
+    private void respond(HttpExchange ex, int status, JsonNode body) throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(body);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> queryParams(URI uri) {
+        Map<String, String> params = new HashMap<>();
+        String raw = uri.getRawQuery();
+        if (raw == null) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+}
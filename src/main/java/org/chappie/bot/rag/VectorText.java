@@ -0,0 +1,42 @@
+package org.chappie.bot.rag;
+
+/**
+ * pgvector's text representation of a vector: {@code [0.1,0.2,...]}.
+ */
+final class VectorText {
+
+    private VectorText() {
+    }
+
+    static String format(float[] v) {
+        StringBuilder sb = new StringBuilder(v.length * 12 + 2);
+        sb.append('[');
+        for (int i = 0; i < v.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(v[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    static float[] parse(String text) {
+        String s = text.trim();
+        if (s.length() < 2 || s.charAt(0) != '[' || s.charAt(s.length() - 1) != ']') {
+            throw new IllegalArgumentException("Not a vector: " + (s.length() > 40 ? s.substring(0, 40) + "..." : s));
+        }
+        if (s.length() == 2) return new float[0];
+
+        int count = 1;
+        for (int i = 1; i < s.length() - 1; i++) {
+            if (s.charAt(i) == ',') count++;
+        }
+        float[] v = new float[count];
+        int start = 1;
+        for (int i = 0; i < count; i++) {
+            int end = s.indexOf(',', start);
+            if (end < 0) end = s.length() - 1;
+            v[i] = Float.parseFloat(s.substring(start, end));
+            start = end + 1;
+        }
+        return v;
+    }
+}
@@ -0,0 +1,105 @@
+package org.chappie.bot.rag;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class IncludeResolverTest {
+
+    private static final String TAGGED = String.join("\n",
+            "before",
+            "// tag::a[]",
+            "in a",
+            "// end::a[]",
+            "// tag::b[]",
+            "in b",
+            "// end::b[]",
+            "after");
+
+    @TempDir
+    Path repo;
+
+    @Test
+    void nestedIncludeAttributesAreInTheKey() throws IOException {
+        write("outer.adoc", "Outer\ninclude::inner.adoc[]");
+        write("inner.adoc", "Inner {x}");
+        IncludeResolver resolver = new IncludeResolver(repo);
+
+        IncludeResolver.Resolved a = resolve(resolver, "a.adoc", ":x: first\n\ninclude::outer.adoc[]");
+        IncludeResolver.Resolved b = resolve(resolver, "b.adoc", ":x: second\n\ninclude::outer.adoc[]");
+        IncludeResolver.Resolved a2 = resolve(resolver, "a2.adoc", ":x: first\n\ninclude::outer.adoc[]");
+
+        assertEquals(List.of("Outer\n", "Inner first\n"), bodies(a));
+        assertEquals(List.of("Outer\n", "Inner second\n"), bodies(b));
+        assertNotEquals(a.fragments().get(0).key(), b.fragments().get(0).key());
+        assertSame(a.fragments().get(0), a2.fragments().get(0));
+        assertSame(a.fragments().get(1), a2.fragments().get(1));
+    }
+
+    @Test
+    void attributesDefinedBeforeUseAreNotInputs() throws IOException {
+        write("defines.adoc", ":x: own\n\nValue {x}");
+        IncludeResolver resolver = new IncludeResolver(repo);
+
+        IncludeResolver.Resolved a = resolve(resolver, "a.adoc", ":x: first\n\ninclude::defines.adoc[]");
+        IncludeResolver.Resolved b = resolve(resolver, "b.adoc", ":x: second\n\ninclude::defines.adoc[]");
+
+        assertEquals(List.of("\nValue own\n"), bodies(a));
+        assertSame(a.fragments().get(0), b.fragments().get(0));
+    }
+
+    @Test
+    void tag() throws IOException {
+        write("tagged.adoc", TAGGED);
+        assertEquals(List.of("in a\n"), bodies(resolve(new IncludeResolver(repo), "g.adoc", "include::tagged.adoc[tag=a]")));
+    }
+
+    @Test
+    void negatedTags() throws IOException {
+        write("tagged.adoc", TAGGED);
+        assertEquals(List.of("before\nin a\nafter\n"),
+                bodies(resolve(new IncludeResolver(repo), "g.adoc", "include::tagged.adoc[tags=!b]")));
+    }
+
+    @Test
+    void differentTagsAreDifferentFragments() throws IOException {
+        write("tagged.adoc", TAGGED);
+        IncludeResolver.Resolved r = resolve(new IncludeResolver(repo), "g.adoc",
+                "include::tagged.adoc[tag=a]\ninclude::tagged.adoc[tag=b]");
+        assertEquals(List.of("in a\n", "in b\n"), bodies(r));
+    }
+
+    @Test
+    void lines() throws IOException {
+        write("tagged.adoc", TAGGED);
+        assertEquals(List.of("in a\nin b\nafter\n"),
+                bodies(resolve(new IncludeResolver(repo), "g.adoc", "include::tagged.adoc[lines=3;6..-1]")));
+    }
+
+    @Test
+    void levelOffsetSkipsListings() throws IOException {
+        write("section.adoc", "== Title\n\n----\n== not a heading\n----");
+        assertEquals(List.of("=== Title\n\n----\n== not a heading\n----\n"),
+                bodies(resolve(new IncludeResolver(repo), "g.adoc", "include::section.adoc[leveloffset=+1]")));
+    }
+
+    private IncludeResolver.Resolved resolve(IncludeResolver resolver, String name, String text) throws IOException {
+        return resolver.resolve(write(name, text), text);
+    }
+
+    private Path write(String name, String text) throws IOException {
+        return Files.writeString(repo.resolve(name), text);
+    }
+
+    private static List<String> bodies(IncludeResolver.Resolved resolved) {
+        return resolved.fragments().stream().map(IncludeResolver.Fragment::body).toList();
+    }
+}
@@ -0,0 +1,71 @@
+package org.chappie.bot.rag;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class LexicalIndexTest {
+
+    @Test
+    void dottedProperty() {
+        assertEquals(List.of("quarkus.http.port", "http.port", "quarkus", "http", "port"),
+                LexicalIndex.terms("quarkus.http.port"));
+    }
+
+    @Test
+    void hyphenatedArtifact() {
+        assertEquals(List.of("quarkus-rest-jackson", "rest-jackson", "quarkus", "rest", "jackson"),
+                LexicalIndex.terms("quarkus-rest-jackson"));
+    }
+
+    @Test
+    void mixedSeparatorsKeepTheirPositions() {
+        assertEquals(List.of("quarkus.http.root-path", "http.root-path", "root-path", "quarkus", "http", "root", "path"),
+                LexicalIndex.terms("quarkus.http.root-path"));
+        assertEquals(List.of("quarkus.datasource.db-kind", "datasource.db-kind", "db-kind", "quarkus", "datasource", "db", "kind"),
+                LexicalIndex.terms("quarkus.datasource.db-kind"));
+    }
+
+    @Test
+    void annotationAndCamelCase() {
+        assertEquals(List.of("configproperty", "config", "property"), LexicalIndex.terms("@ConfigProperty"));
+    }
+
+    @Test
+    void sentencePunctuationIsNotPartOfTheIdentifier() {
+        assertEquals(List.of("set", "quarkus.http.root-path", "http.root-path", "root-path", "quarkus", "http", "root", "path"),
+                LexicalIndex.terms("How do I set quarkus.http.root-path?"));
+        assertEquals(List.of("quarkus.http.port"), LexicalIndex.identifiers("Change quarkus.http.port."));
+    }
+
+    @Test
+    void identifiers() {
+        assertEquals(List.of("quarkus.http.root-path", "quarkus-rest-jackson", "configproperty"),
+                LexicalIndex.identifiers("Does quarkus.http.root-path apply to quarkus-rest-jackson and @ConfigProperty?"));
+        assertEquals(List.of(), LexicalIndex.identifiers("How do I configure the HTTP port"));
+    }
+
+    @Test
+    void configAndApiIdentifiers() {
+        assertEquals(List.of("quarkus_http_port", "getconfigvalue", "uni.createfrom"),
+                LexicalIndex.identifiers("Is QUARKUS_HTTP_PORT read by getConfigValue or Uni.createFrom?"));
+    }
+
+    @Test
+    void productNamesAbbreviationsAndProseAreNotIdentifiers() {
+        assertEquals(List.of(), LexicalIndex.identifiers("How do I use OpenShift with GraalVM, e.g. native?"));
+        assertEquals(List.of(), LexicalIndex.identifiers("Connect to PostgreSQL from a non-blocking route"));
+        assertEquals(List.of(), LexicalIndex.identifiers("Is the built-in dev service set up step-by-step?"));
+        assertEquals(List.of(), LexicalIndex.identifiers("Compare i.e. x_y and a.b"));
+        assertEquals("'openshift' | 'open' | 'shift' | 'graalvm' | 'graal' | 'vm' | 'e.g' | 'native'",
+                LexicalIndex.tsquery("How do I use OpenShift with GraalVM, e.g. native?"));
+    }
+
+    @Test
+    void identifiersMustAllMatch() {
+        assertEquals("'quarkus.http.root-path' & 'quarkus-rest-jackson'",
+                LexicalIndex.tsquery("quarkus.http.root-path with quarkus-rest-jackson"));
+    }
+}